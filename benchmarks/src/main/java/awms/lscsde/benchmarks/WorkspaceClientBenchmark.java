@@ -0,0 +1,106 @@
+/**
+ * Benchmarks the Kubernetes lookups and activation of the workspace client.
+ *
+ * <p>
+ * The client is pointed at a {@link FakeKubernetesApi} so that the cost of
+ * listing, filtering, deserialising and patching bindings is measured for
+ * clusters of different sizes.</p>
+ */
+package awms.lscsde.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import awms.lscsde.requiredaction.BoundWorkspace;
+import awms.lscsde.requiredaction.FakeKubernetesApi;
+import awms.lscsde.requiredaction.WorkspaceActivationResult;
+import awms.lscsde.requiredaction.WorkspaceClientConfig;
+import awms.lscsde.requiredaction.WorkspaceKubernetesClient;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+import io.kubernetes.client.openapi.ApiClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures throughput and, through sampling, latency percentiles of:
+ * <ul>
+ * <li>{@link WorkspaceKubernetesClient#getAllWorkspaceBindingsForUser}</li>
+ * <li>{@link WorkspaceKubernetesClient#getAllWorkspacesForUser}</li>
+ * <li>{@link WorkspaceKubernetesClient#setActiveWorkspaceBindingForUser},
+ * which alternates between the bindings of each user so that every call
+ * patches</li>
+ * </ul>
+ * for every combination of the total number of bindings and the number of
+ * bindings per user. Each invocation uses the next user in turn. The client
+ * uses its default configuration, so the caches are disabled and every call
+ * reaches the fake API.
+ *
+ * Run with {@code -prof gc} to report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkspaceClientBenchmark {
+
+    @Param({"10", "1000", "10000", "50000"})
+    public int bindings;
+
+    @Param({"1", "10", "50"})
+    public int bindingsPerUser;
+
+    protected FakeKubernetesApi api;
+    protected WorkspaceKubernetesClient client;
+    protected AtomicInteger invocations = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        api = new FakeKubernetesApi(bindings, bindingsPerUser, config.getUsernameLabel());
+        ApiClient apiClient = new ApiClient();
+        client = new WorkspaceKubernetesClient(config, apiClient);
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(api).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+    }
+
+    protected String nextUsername() {
+        return FakeKubernetesApi.username(Math.floorMod(invocations.getAndIncrement(), api.getUserCount()));
+    }
+
+    @Benchmark
+    public List<V1AnalyticsWorkspaceBinding> getAllWorkspaceBindingsForUser() {
+        return client.getAllWorkspaceBindingsForUser(nextUsername());
+    }
+
+    @Benchmark
+    public List<BoundWorkspace> getAllWorkspacesForUser() {
+        return client.getAllWorkspacesForUser(nextUsername());
+    }
+
+    @Benchmark
+    public WorkspaceActivationResult setActiveWorkspaceBindingForUser() {
+        int invocation = invocations.getAndIncrement();
+        String username = FakeKubernetesApi.username(Math.floorMod(invocation, api.getUserCount()));
+        List<String> bindingNames = api.getBindingNames(username);
+        String bindingName = bindingNames.get(Math.floorMod(invocation / api.getUserCount(), bindingNames.size()));
+        return client.setActiveWorkspaceBindingForUser(bindingName, username);
+    }
+}
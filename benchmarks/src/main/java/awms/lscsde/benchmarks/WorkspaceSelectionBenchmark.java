@@ -0,0 +1,79 @@
+/**
+ * Benchmarks the rendering of the workspace selection form.
+ *
+ * <p>
+ * The JSON built by {@code createForm} for the form template is measured on
+ * its own, with and without the selection cache, so that its cost can be
+ * separated from the Kubernetes lookups.</p>
+ */
+package awms.lscsde.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import awms.lscsde.requiredaction.BoundWorkspace;
+import awms.lscsde.requiredaction.FakeKubernetesApi;
+import awms.lscsde.requiredaction.WorkspaceClientConfig;
+import awms.lscsde.requiredaction.WorkspaceKubernetesClient;
+import awms.lscsde.requiredaction.WorkspaceSelectionCache;
+import io.kubernetes.client.openapi.ApiClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the available workspaces JSON of a user with the given number of
+ * bindings, built by {@link WorkspaceSelectionCache#toJson} and served from a
+ * warm {@link WorkspaceSelectionCache}. The workspaces are looked up once from
+ * a {@link FakeKubernetesApi} when the trial starts.
+ *
+ * Run with {@code -prof gc} to report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkspaceSelectionBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int bindingsPerUser;
+
+    protected List<BoundWorkspace> workspaces;
+    protected WorkspaceSelectionCache selectionCache;
+    protected String username = FakeKubernetesApi.username(0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        FakeKubernetesApi api = new FakeKubernetesApi(bindingsPerUser, bindingsPerUser, config.getUsernameLabel());
+        ApiClient apiClient = new ApiClient();
+        WorkspaceKubernetesClient client = new WorkspaceKubernetesClient(config, apiClient);
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(api).build());
+        workspaces = client.getAllWorkspacesForUser(username);
+        client.close();
+
+        selectionCache = new WorkspaceSelectionCache(1, TimeUnit.HOURS.toSeconds(1));
+        selectionCache.getAvailableWorkspacesJson(username, user -> workspaces);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return WorkspaceSelectionCache.toJson(workspaces);
+    }
+
+    @Benchmark
+    public String cachedJson() {
+        return selectionCache.getAvailableWorkspacesJson(username, user -> workspaces);
+    }
+}
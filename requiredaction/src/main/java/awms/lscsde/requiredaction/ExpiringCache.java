@@ -0,0 +1,98 @@
+/**
+ * Provides a small, bounded in-memory cache whose entries expire after a
+ * fixed time to live.
+ *
+ * <p>
+ * This class is used by the workspace required action wherever state is
+ * memoised on a single Keycloak node.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+
+/**
+ * A thread-safe cache bounded by both size and age.
+ *
+ * Entries are held in access order, so when the cache is full the least
+ * recently used entry is evicted. Entries older than the time to live are
+ * treated as absent and removed when they are next read.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class ExpiringCache<K, V> {
+
+    protected final int maxEntries;
+    protected final long ttlNanos;
+    protected final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * @param maxEntries The maximum number of entries held
+     * @param ttl The time to live of each entry
+     * @param unit The unit of the time to live
+     */
+    public ExpiringCache(int maxEntries, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key The key to look up
+     * @return The value, or null if it is absent or has expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.created > ttlNanos) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<V>(value));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry matching a predicate.
+     *
+     * @param predicate Tested against each key and value
+     */
+    public synchronized void removeIf(BiPredicate<K, V> predicate) {
+        entries.entrySet().removeIf(entry -> predicate.test(entry.getKey(), entry.getValue().value));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    protected static class Entry<V> {
+
+        protected final V value;
+        protected final long created = System.nanoTime();
+
+        protected Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Deduplicates concurrent workspace binding activations for the same user.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} so that a user
+ * authenticating to several clients at once triggers a single reconciliation
+ * of their bindings rather than several racing ones.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+
+import org.jboss.logging.Logger;
+
+/**
+ * Single-flight coalescing of activation requests, keyed by username.
+ *
+ * At most one activation runs for a user at any time. While it runs:
+ * <ul>
+ * <li>A request for the same binding, with nothing pending behind it, shares
+ * the in-flight activation.</li>
+ * <li>Any other request becomes the pending activation for the user, which
+ * runs once the in-flight activation completes. A newer request replaces the
+ * target of an older pending one, and every caller waiting on the pending
+ * activation receives the result for the newest target.</li>
+ * </ul>
+ * The pending activation is started on the follow-up executor, a new virtual
+ * thread by default, rather than on the thread which completed the in-flight
+ * activation, which may be the login thread of the first caller.
+ *
+ * Coalesced and superseded requests are counted on the
+ * {@code awms.workspace.activation.coalesced} and
+ * {@code awms.workspace.activation.superseded} counters.
+ */
+public class WorkspaceActivationCoalescer {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceActivationCoalescer.class);
+
+    protected BiFunction<String, String, CompletableFuture<WorkspaceActivationResult>> activator;
+    protected Executor followUpExecutor;
+    protected Map<String, UserActivation> activations = new HashMap<String, UserActivation>();
+
+    /**
+     * @param activator Starts the activation of a binding, given the binding
+     * name and the username, returning a future for its result
+     */
+    public WorkspaceActivationCoalescer(BiFunction<String, String, CompletableFuture<WorkspaceActivationResult>> activator) {
+        this(activator, runnable -> Thread.ofVirtual().name("awms-workspace-activation-follow-up").start(runnable));
+    }
+
+    /**
+     * @param activator Starts the activation of a binding, given the binding
+     * name and the username, returning a future for its result
+     * @param followUpExecutor Starts the pending activation of a user once the
+     * in-flight one completes
+     */
+    public WorkspaceActivationCoalescer(BiFunction<String, String, CompletableFuture<WorkspaceActivationResult>> activator, Executor followUpExecutor) {
+        this.activator = activator;
+        this.followUpExecutor = followUpExecutor;
+    }
+
+    /**
+     * Requests the activation of a workspace binding for a user, sharing or
+     * superseding any activation already in progress for the same user.
+     *
+     * @param workspaceBindingName The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose bindings are reconciled
+     * @return A future completing with the result of the activation that
+     * satisfies this request
+     */
+    public CompletableFuture<WorkspaceActivationResult> activate(String workspaceBindingName, String username) {
+        CompletableFuture<WorkspaceActivationResult> future;
+        boolean start = false;
+        synchronized (activations) {
+            UserActivation activation = activations.get(username);
+            if (activation == null) {
+                activation = new UserActivation(workspaceBindingName);
+                activations.put(username, activation);
+                future = activation.running;
+                start = true;
+            } else if (activation.pending == null && workspaceBindingName.equals(activation.runningBindingName)) {
+                LOG.debugf("Joining in-flight activation of binding '%s' for user '%s'", workspaceBindingName, username);
+                WorkspaceMetrics.increment(WorkspaceMetrics.ACTIVATION_COALESCED);
+                future = activation.running;
+            } else {
+                if (activation.pending == null) {
+                    activation.pending = new CompletableFuture<WorkspaceActivationResult>();
+                } else {
+                    LOG.debugf("Binding '%s' supersedes pending binding '%s' for user '%s'", workspaceBindingName, activation.pendingBindingName, username);
+                    WorkspaceMetrics.increment(WorkspaceMetrics.ACTIVATION_SUPERSEDED);
+                }
+                activation.pendingBindingName = workspaceBindingName;
+                future = activation.pending;
+            }
+        }
+
+        if (start) {
+            run(workspaceBindingName, username, future);
+        }
+        return future;
+    }
+
+    /**
+     * Starts an activation for a user.
+     */
+    protected void run(String workspaceBindingName, String username, CompletableFuture<WorkspaceActivationResult> target) {
+        CompletableFuture<WorkspaceActivationResult> work;
+        try {
+            work = activator.apply(workspaceBindingName, username);
+        } catch (RuntimeException ex) {
+            work = CompletableFuture.failedFuture(ex);
+        }
+        completeWhenDone(work, username, target);
+    }
+
+    /**
+     * Once an activation completes, completes the callers' future and hands
+     * the pending activation for the user, if there is one, to the follow-up
+     * executor.
+     */
+    protected void completeWhenDone(CompletableFuture<WorkspaceActivationResult> work, String username, CompletableFuture<WorkspaceActivationResult> target) {
+        work.whenComplete((result, ex) -> {
+            String nextBindingName = null;
+            CompletableFuture<WorkspaceActivationResult> next = null;
+            synchronized (activations) {
+                UserActivation activation = activations.get(username);
+                if (activation.pending != null) {
+                    nextBindingName = activation.pendingBindingName;
+                    next = activation.pending;
+                    activation.runningBindingName = nextBindingName;
+                    activation.running = next;
+                    activation.pendingBindingName = null;
+                    activation.pending = null;
+                } else {
+                    activations.remove(username);
+                }
+            }
+
+            if (ex != null) {
+                target.completeExceptionally(ex);
+            } else {
+                target.complete(result);
+            }
+
+            if (next != null) {
+                startFollowUp(nextBindingName, username, next);
+            }
+        });
+    }
+
+    protected void startFollowUp(String workspaceBindingName, String username, CompletableFuture<WorkspaceActivationResult> target) {
+        LOG.debugf("Starting pending activation of binding '%s' for user '%s'", workspaceBindingName, username);
+        try {
+            followUpExecutor.execute(() -> run(workspaceBindingName, username, target));
+        } catch (RuntimeException ex) {
+            completeWhenDone(CompletableFuture.failedFuture(ex), username, target);
+        }
+    }
+
+    /**
+     * The in-flight and pending activation of a single user.
+     */
+    protected static class UserActivation {
+
+        protected String runningBindingName;
+        protected CompletableFuture<WorkspaceActivationResult> running = new CompletableFuture<WorkspaceActivationResult>();
+        protected String pendingBindingName;
+        protected CompletableFuture<WorkspaceActivationResult> pending;
+
+        protected UserActivation(String runningBindingName) {
+            this.runningBindingName = runningBindingName;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Remembers which workspace bindings have already been activated within an
+ * SSO session.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} so that a user
+ * authenticating to several clients within the same SSO session causes the
+ * Kubernetes reconciliation of their bindings only once.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.jboss.logging.Logger;
+
+/**
+ * A bounded, expiring memo of successful activations keyed by the parent
+ * authentication session id and the binding name.
+ *
+ * Selecting a different binding produces a different key, so the memo never
+ * suppresses a change of workspace. A memoised activation is also discarded
+ * when the supplied state check reports that the binding is no longer active,
+ * for example because it has since been scaled down.
+ */
+public class WorkspaceActivationMemo {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceActivationMemo.class);
+
+    protected ExpiringCache<String, String> activations;
+    protected BiFunction<String, String, Boolean> bindingActiveCheck;
+
+    /**
+     * @param maxEntries The maximum number of activations remembered
+     * @param ttlSeconds The time in seconds an activation is remembered for
+     * @param bindingActiveCheck Given a binding namespace and name, returns
+     * true if the binding is known to be active, false if it is known not to
+     * be, or null if its state is unknown
+     */
+    public WorkspaceActivationMemo(int maxEntries, long ttlSeconds, BiFunction<String, String, Boolean> bindingActiveCheck) {
+        this.activations = new ExpiringCache<String, String>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+        this.bindingActiveCheck = bindingActiveCheck;
+    }
+
+    /**
+     * Determines whether a binding has already been activated within a
+     * session and is still active.
+     *
+     * @param sessionId The id of the parent authentication session
+     * @param workspaceBindingName The name of the workspace binding
+     * @return true if the activation can be skipped
+     */
+    public boolean isActivated(String sessionId, String workspaceBindingName) {
+        String key = key(sessionId, workspaceBindingName);
+        String namespace = activations.get(key);
+        if (namespace == null) {
+            return false;
+        }
+
+        if (Boolean.FALSE.equals(bindingActiveCheck.apply(namespace, workspaceBindingName))) {
+            LOG.info(String.format("Binding '%s' is no longer active, discarding memoised activation", workspaceBindingName));
+            activations.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers an activation if it succeeded and the binding was found.
+     *
+     * @param sessionId The id of the parent authentication session
+     * @param result The result of the activation
+     */
+    public void record(String sessionId, WorkspaceActivationResult result) {
+        if (result.isSuccessful() && result.getWorkspaceBindingNamespace() != null) {
+            activations.put(key(sessionId, result.getWorkspaceBindingName()), result.getWorkspaceBindingNamespace());
+        }
+    }
+
+    protected static String key(String sessionId, String workspaceBindingName) {
+        return String.format("%s/%s", sessionId, workspaceBindingName);
+    }
+}
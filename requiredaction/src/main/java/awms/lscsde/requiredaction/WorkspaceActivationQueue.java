@@ -0,0 +1,147 @@
+/**
+ * Runs workspace binding activations in the background.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} so that logins
+ * which do not need a workspace to be selected are not held up by the
+ * Kubernetes calls required to reconcile the user's bindings.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import io.micrometer.core.instrument.Gauge;
+import org.jboss.logging.Logger;
+
+/**
+ * A bounded queue of activation requests, drained by a fixed pool of worker
+ * threads which run the activation, ultimately calling
+ * {@link WorkspaceKubernetesClient#setActiveWorkspaceBindingForUser}.
+ *
+ * When the queue is full the activation is run on the calling thread, so a
+ * request is never dropped. Once the queue is closed, activations still
+ * queued and any requested afterwards fail with a
+ * {@link RejectedExecutionException}, so no caller is left waiting.
+ *
+ * The following meters are published:
+ * <ul>
+ * <li>{@code awms.workspace.activation.queue.depth}, the number of queued
+ * activations</li>
+ * <li>{@code awms.workspace.activation.latency}, the time from enqueue to
+ * completion, tagged with the outcome</li>
+ * <li>{@code awms.workspace.activation.failures}, the number of activations
+ * that threw or failed to patch a binding</li>
+ * </ul>
+ */
+public class WorkspaceActivationQueue {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceActivationQueue.class);
+
+    protected BiFunction<String, String, WorkspaceActivationResult> activation;
+    protected ThreadPoolExecutor executor;
+
+    /**
+     * @param activation Activates a binding, given the binding name and the
+     * username
+     * @param workers The number of worker threads
+     * @param capacity The maximum number of queued activations
+     */
+    public WorkspaceActivationQueue(BiFunction<String, String, WorkspaceActivationResult> activation, int workers, int capacity) {
+        this.activation = activation;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(capacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, String.format("awms-workspace-activation-%d", threadCount.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                this::reject);
+
+        Gauge.builder(WorkspaceMetrics.ACTIVATION_QUEUE_DEPTH, executor, e -> e.getQueue().size())
+                .register(WorkspaceMetrics.registry());
+    }
+
+    /**
+     * Queues the activation of a workspace binding for a user.
+     *
+     * @param workspaceBindingName The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose bindings are reconciled
+     * @return A future completing with the result of the activation
+     */
+    public CompletableFuture<WorkspaceActivationResult> enqueue(String workspaceBindingName, String username) {
+        long enqueued = System.nanoTime();
+        LOG.debugf("Queueing activation of binding '%s' for user '%s'", workspaceBindingName, username);
+        ActivationTask task = new ActivationTask(workspaceBindingName, username);
+        executor.execute(task);
+        return task.future
+                .whenComplete((result, ex) -> {
+                    boolean failed = ex != null || !result.isSuccessful();
+                    WorkspaceMetrics.recordTime(WorkspaceMetrics.ACTIVATION_LATENCY, Duration.ofNanos(System.nanoTime() - enqueued),
+                            WorkspaceMetrics.TAG_OUTCOME, failed ? "failure" : "success");
+                    if (failed) {
+                        WorkspaceMetrics.increment(WorkspaceMetrics.ACTIVATION_FAILURES);
+                        LOG.warn(String.format("Activation of binding '%s' for user '%s' failed: %s", workspaceBindingName, username,
+                                ex != null ? ex : result));
+                    }
+                });
+    }
+
+    /**
+     * Handles an activation the executor cannot accept, running it on the
+     * calling thread when the queue is full, or failing it when the queue is
+     * closed.
+     */
+    protected void reject(Runnable runnable, ThreadPoolExecutor executor) {
+        ActivationTask task = (ActivationTask) runnable;
+        if (executor.isShutdown()) {
+            task.future.completeExceptionally(new RejectedExecutionException("Workspace activation queue is closed"));
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * Stops the worker threads, failing any queued activations.
+     */
+    public void close() {
+        for (Runnable runnable : executor.shutdownNow()) {
+            ((ActivationTask) runnable).future.completeExceptionally(new RejectedExecutionException("Workspace activation queue is closed"));
+        }
+    }
+
+    /**
+     * A queued activation and the future completed with its result.
+     */
+    protected class ActivationTask implements Runnable {
+
+        protected final String workspaceBindingName;
+        protected final String username;
+        protected final CompletableFuture<WorkspaceActivationResult> future = new CompletableFuture<WorkspaceActivationResult>();
+
+        protected ActivationTask(String workspaceBindingName, String username) {
+            this.workspaceBindingName = workspaceBindingName;
+            this.username = username;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(activation.apply(workspaceBindingName, username));
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Represents the outcome of activating a workspace binding for a user.
+ *
+ * <p>
+ * This class is returned by
+ * {@link WorkspaceKubernetesClient#setActiveWorkspaceBindingForUser} so that
+ * callers can tell which bindings were scaled, which were already in the
+ * desired state and which could not be updated.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summarises the bindings touched while setting the active workspace binding
+ * for a user.
+ *
+ * Bindings are identified by name. A binding is reported as:
+ * <ul>
+ * <li>changed, if its replica count was patched successfully</li>
+ * <li>skipped, if it already had the desired replica count</li>
+ * <li>failed, if the patch was attempted but did not succeed, along with the
+ * reason it failed</li>
+ * </ul>
+ */
+public class WorkspaceActivationResult {
+
+    protected String _username;
+    protected String _workspaceBindingName;
+    protected String _workspaceBindingNamespace;
+    protected List<String> _changed = new ArrayList<String>();
+    protected List<String> _skipped = new ArrayList<String>();
+    protected Map<String, String> _failed = new LinkedHashMap<String, String>();
+
+    public WorkspaceActivationResult(String username, String workspaceBindingName) {
+        _username = username;
+        _workspaceBindingName = workspaceBindingName;
+    }
+
+    public String getUsername() {
+        return _username;
+    }
+
+    public String getWorkspaceBindingName() {
+        return _workspaceBindingName;
+    }
+
+    /**
+     * @return The namespace of the active workspace binding, or null if the
+     * binding was not found amongst the user's bindings
+     */
+    public String getWorkspaceBindingNamespace() {
+        return _workspaceBindingNamespace;
+    }
+
+    public void setWorkspaceBindingNamespace(String workspaceBindingNamespace) {
+        _workspaceBindingNamespace = workspaceBindingNamespace;
+    }
+
+    public synchronized void addChanged(String bindingName) {
+        _changed.add(bindingName);
+    }
+
+    public synchronized void addSkipped(String bindingName) {
+        _skipped.add(bindingName);
+    }
+
+    public synchronized void addFailed(String bindingName, String reason) {
+        _failed.put(bindingName, reason);
+    }
+
+    public synchronized List<String> getChanged() {
+        return Collections.unmodifiableList(new ArrayList<String>(_changed));
+    }
+
+    public synchronized List<String> getSkipped() {
+        return Collections.unmodifiableList(new ArrayList<String>(_skipped));
+    }
+
+    public synchronized List<String> getFailed() {
+        return Collections.unmodifiableList(new ArrayList<String>(_failed.keySet()));
+    }
+
+    /**
+     * @return The reason each failed binding could not be updated, keyed by
+     * binding name
+     */
+    public synchronized Map<String, String> getErrors() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(_failed));
+    }
+
+    /**
+     * @return true if no binding failed to be updated
+     */
+    public synchronized boolean isSuccessful() {
+        return _failed.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("user '%s', binding '%s': changed=%s, skipped=%s, failed=%s",
+                _username, _workspaceBindingName, _changed, _skipped, _failed);
+    }
+}
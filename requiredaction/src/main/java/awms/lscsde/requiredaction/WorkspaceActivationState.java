@@ -0,0 +1,216 @@
+/**
+ * Shares workspace activation state between the Keycloak nodes of a cluster.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} so that a user
+ * whose logins are load balanced across several Keycloak nodes does not cause
+ * each node to repeat the same scaling writes.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.commons.api.BasicCache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+
+/**
+ * Activation state held in an Infinispan cache that is distributed across the
+ * Keycloak cluster.
+ *
+ * Two kinds of entry are stored, both as plain strings so that no custom
+ * marshalling is required:
+ * <ul>
+ * <li>{@code active:<username>}, the binding last activated for the user,
+ * its namespace, when it was activated and by which node. Entries expire
+ * after the configured state time to live.</li>
+ * <li>{@code lock:<username>}, held by the node currently activating a
+ * binding for the user. Locks expire after the configured lock time to live
+ * so that a node failing mid activation cannot block the user.</li>
+ * </ul>
+ *
+ * The store works against any {@link BasicCache}, so it can be exercised
+ * against an embedded, multi-node Infinispan cache manager outside Keycloak.
+ */
+public class WorkspaceActivationState {
+
+    public static final String CACHE_NAME = "awms-workspace-activation";
+    protected static final String ACTIVE_PREFIX = "active:";
+    protected static final String LOCK_PREFIX = "lock:";
+    protected static final String SEPARATOR = "|";
+    private static final Logger LOG = Logger.getLogger(WorkspaceActivationState.class);
+
+    protected BasicCache<String, String> cache;
+    protected String nodeId = UUID.randomUUID().toString();
+    protected long stateTtlSeconds;
+    protected long lockTtlSeconds;
+
+    /**
+     * @param cache The cache holding the state
+     * @param stateTtlSeconds The time in seconds an activation is considered
+     * current
+     * @param lockTtlSeconds The time in seconds after which an unreleased lock
+     * expires
+     */
+    public WorkspaceActivationState(BasicCache<String, String> cache, long stateTtlSeconds, long lockTtlSeconds) {
+        this.cache = cache;
+        this.stateTtlSeconds = stateTtlSeconds;
+        this.lockTtlSeconds = lockTtlSeconds;
+    }
+
+    /**
+     * Creates the activation state using the Infinispan cache container of
+     * Keycloak. The {@value #CACHE_NAME} cache is used if it is configured in
+     * the Keycloak cache configuration, otherwise it is defined as a
+     * distributed cache when the container is clustered, or a local cache
+     * when it is not.
+     *
+     * @param connectionProvider The Infinispan connection provider of the
+     * current session
+     * @param config The configuration of the extension
+     * @return The activation state
+     */
+    public static WorkspaceActivationState fromConnectionProvider(InfinispanConnectionProvider connectionProvider, WorkspaceClientConfig config) {
+        Cache<Object, Object> workCache = connectionProvider.getCache(InfinispanConnectionProvider.WORK_CACHE_NAME);
+        return fromCacheManager(workCache.getCacheManager(), config);
+    }
+
+    /**
+     * Creates the activation state using the {@value #CACHE_NAME} cache of
+     * a cache manager, defining it as in
+     * {@link #fromConnectionProvider(InfinispanConnectionProvider, WorkspaceClientConfig)}
+     * if it is not configured.
+     *
+     * @param cacheManager The cache manager holding the cache
+     * @param config The configuration of the extension
+     * @return The activation state
+     */
+    public static WorkspaceActivationState fromCacheManager(EmbeddedCacheManager cacheManager, WorkspaceClientConfig config) {
+        if (cacheManager.getCacheConfiguration(CACHE_NAME) == null) {
+            CacheMode cacheMode = cacheManager.getCacheManagerConfiguration().isClustered() ? CacheMode.DIST_SYNC : CacheMode.LOCAL;
+            LOG.info(String.format("Defining %s cache '%s'", cacheMode, CACHE_NAME));
+            ConfigurationBuilder builder = new ConfigurationBuilder();
+            builder.clustering().cacheMode(cacheMode);
+            cacheManager.defineConfiguration(CACHE_NAME, builder.build());
+        }
+
+        Cache<String, String> cache = cacheManager.getCache(CACHE_NAME);
+        return new WorkspaceActivationState(cache, config.getClusterStateTtlSeconds(), config.getClusterLockTtlSeconds());
+    }
+
+    /**
+     * Retrieves the binding last activated for a user by any node.
+     *
+     * @param username The username of the user
+     * @return The activation, or null if there is no current activation
+     */
+    public ActiveBinding getActiveBinding(String username) {
+        String value = cache.get(ACTIVE_PREFIX + username);
+        return value != null ? ActiveBinding.parse(value) : null;
+    }
+
+    /**
+     * Records the binding activated for a user.
+     *
+     * @param username The username of the user
+     * @param result The result of the activation, only recorded if it
+     * succeeded and the binding was found
+     */
+    public void recordActivation(String username, WorkspaceActivationResult result) {
+        if (result.isSuccessful() && result.getWorkspaceBindingNamespace() != null) {
+            String value = String.join(SEPARATOR, result.getWorkspaceBindingName(), result.getWorkspaceBindingNamespace(),
+                    Long.toString(System.currentTimeMillis()), nodeId);
+            cache.put(ACTIVE_PREFIX + username, value, stateTtlSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Removes the recorded activation of a user, for example after their
+     * bindings have been scaled down.
+     *
+     * @param username The username of the user
+     */
+    public void clearActivation(String username) {
+        cache.remove(ACTIVE_PREFIX + username);
+    }
+
+    /**
+     * Attempts to take the activation lock of a user.
+     *
+     * @param username The username of the user
+     * @param workspaceBindingName The binding being activated
+     * @return true if the lock was taken by this node
+     */
+    public boolean tryLock(String username, String workspaceBindingName) {
+        return cache.putIfAbsent(LOCK_PREFIX + username, lockValue(workspaceBindingName), lockTtlSeconds, TimeUnit.SECONDS) == null;
+    }
+
+    /**
+     * Releases the activation lock of a user, if it is held by this node for
+     * the given binding.
+     *
+     * @param username The username of the user
+     * @param workspaceBindingName The binding that was being activated
+     */
+    public void unlock(String username, String workspaceBindingName) {
+        cache.remove(LOCK_PREFIX + username, lockValue(workspaceBindingName));
+    }
+
+    /**
+     * @param username The username of the user
+     * @return The name of the binding being activated for the user by any
+     * node, or null if no activation is in progress
+     */
+    public String getLockedBinding(String username) {
+        String value = cache.get(LOCK_PREFIX + username);
+        return value != null ? value.substring(value.indexOf(SEPARATOR) + 1) : null;
+    }
+
+    protected String lockValue(String workspaceBindingName) {
+        return nodeId + SEPARATOR + workspaceBindingName;
+    }
+
+    /**
+     * A binding activated for a user, as recorded in the cache.
+     */
+    public static class ActiveBinding {
+
+        protected String _bindingName;
+        protected String _namespace;
+        protected long _activatedAt;
+        protected String _nodeId;
+
+        public ActiveBinding(String bindingName, String namespace, long activatedAt, String nodeId) {
+            _bindingName = bindingName;
+            _namespace = namespace;
+            _activatedAt = activatedAt;
+            _nodeId = nodeId;
+        }
+
+        protected static ActiveBinding parse(String value) {
+            String[] parts = value.split("\\|", 4);
+            return new ActiveBinding(parts[0], parts[1], Long.parseLong(parts[2]), parts.length > 3 ? parts[3] : null);
+        }
+
+        public String getBindingName() {
+            return _bindingName;
+        }
+
+        public String getNamespace() {
+            return _namespace;
+        }
+
+        public long getActivatedAt() {
+            return _activatedAt;
+        }
+
+        public String getNodeId() {
+            return _nodeId;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/**
+ * Exposes workspace binding administration over REST.
+ *
+ * <p>
+ * This class is created by the {@link WorkspaceAdminResourceProviderFactory}
+ * so that operations staff can scale many bindings at once, for example to
+ * drain a workspace before maintenance, and inspect the state of a user's
+ * bindings as the extension sees it.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import jakarta.ws.rs.BadRequestException;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.ForbiddenException;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotAuthorizedException;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.jboss.logging.Logger;
+import org.keycloak.models.AdminRoles;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.Constants;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.services.managers.AppAuthManager;
+import org.keycloak.services.managers.AuthenticationManager;
+import org.keycloak.services.resource.RealmResourceProvider;
+
+/**
+ * Provides the following endpoints under {@code /realms/{realm}/workspaces}:
+ * <ul>
+ * <li>{@code POST bindings/scale}, scales every binding matching the request
+ * to the given replica count. The patches run in parallel, bounded by the
+ * configured concurrency and rate, which are shared by every request to the
+ * node, and the outcome of each binding is streamed back as a line of
+ * newline delimited JSON as soon as it completes, followed by a summary line.
+ * Patches not yet made are cancelled if the response cannot be written.
+ * Requires the {@code manage-users} role of the {@code realm-management}
+ * client.</li>
+ * <li>{@code GET users/{username}/status}, reports the user's selected
+ * binding, the binding recorded as active in the cluster-wide activation
+ * state and the replica count of each of the user's bindings. Read only.
+ * Requires the {@code view-users} role of the {@code realm-management}
+ * client.</li>
+ * </ul>
+ * Callers authenticate with a bearer token issued by the realm. Bindings are
+ * shared by every realm, so both endpoints only act on bindings whose
+ * spec.username is a user of the realm, and an administrator of one realm
+ * cannot scale or inspect the workspaces of another realm's users.
+ */
+public class WorkspaceAdminResourceProvider implements RealmResourceProvider {
+
+    public static final String NDJSON = "application/x-ndjson";
+    protected static final Gson GSON = new Gson();
+    private static final Logger LOG = Logger.getLogger(WorkspaceAdminResourceProvider.class);
+
+    protected KeycloakSession session;
+    protected WorkspaceRequiredActionFactory requiredActionFactory;
+    protected ExecutorService executor;
+    protected Semaphore permits;
+    protected AtomicLong nextSlot;
+    protected long patchIntervalNanos;
+
+    /**
+     * @param session The current Keycloak session
+     * @param requiredActionFactory The factory holding the shared workspace
+     * components
+     * @param executor The executor the patches run on
+     * @param permits The permits bounding the patches in flight, shared by
+     * every request
+     * @param nextSlot The time, from {@link System#nanoTime()}, of the next
+     * patch allowed by the rate limit, shared by every request
+     * @param patchesPerSecond The maximum number of patches started per second
+     */
+    public WorkspaceAdminResourceProvider(KeycloakSession session, WorkspaceRequiredActionFactory requiredActionFactory,
+            ExecutorService executor, Semaphore permits, AtomicLong nextSlot, int patchesPerSecond) {
+        this.session = session;
+        this.requiredActionFactory = requiredActionFactory;
+        this.executor = executor;
+        this.permits = permits;
+        this.nextSlot = nextSlot;
+        this.patchIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, patchesPerSecond);
+    }
+
+    @Override
+    public Object getResource() {
+        return this;
+    }
+
+    /**
+     * Scales the bindings matching a request. The request is a JSON object
+     * with a required {@code replicas} and optional {@code namespace},
+     * {@code workspace}, {@code username} and {@code labelSelector} filters,
+     * all of which must match. A request without any filter is rejected
+     * unless it also sets {@code all} to true, so that every binding of the
+     * realm is not scaled by mistake. Bindings whose user is not in the realm
+     * are never scaled.
+     *
+     * @param body The request
+     * @return A stream of newline delimited JSON, one line per binding
+     * followed by a summary
+     */
+    @POST
+    @Path("bindings/scale")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(NDJSON)
+    public Response scaleBindings(String body) {
+        UserModel admin = authorise(AdminRoles.MANAGE_USERS);
+        WorkspaceKubernetesClient workspaceClient = workspaceClient();
+
+        BulkScaleRequest request;
+        try {
+            request = GSON.fromJson(body, BulkScaleRequest.class);
+        } catch (JsonSyntaxException ex) {
+            throw new BadRequestException("Request is not valid JSON");
+        }
+        String invalid = request != null ? request.validate() : "replicas must be zero or more";
+        if (invalid != null) {
+            throw new BadRequestException(invalid);
+        }
+
+        List<WorkspaceBindingSummary> bindings = selectBindings(workspaceClient, request);
+        LOG.info(String.format("User '%s' is scaling %d Workspace Binding(s) to replica=%d", admin.getUsername(), bindings.size(), request.replicas));
+
+        return Response.ok(streamScale(workspaceClient, bindings, request.replicas)).type(NDJSON).build();
+    }
+
+    /**
+     * Scales bindings in parallel, writing the outcome of each as a line of
+     * newline delimited JSON as soon as it completes, followed by a summary.
+     * The patches not yet made are cancelled if a line cannot be written or
+     * the response is interrupted.
+     *
+     * @param workspaceClient The client used to patch the bindings
+     * @param bindings The bindings to scale
+     * @param replicas The new replica count
+     * @return The response body
+     */
+    protected StreamingOutput streamScale(WorkspaceKubernetesClient workspaceClient, List<WorkspaceBindingSummary> bindings, Integer replicas) {
+        return output -> {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<Map<String, Object>>(executor);
+            List<Future<Map<String, Object>>> patches = new ArrayList<Future<Map<String, Object>>>(bindings.size());
+            Map<String, Integer> totals = new LinkedHashMap<String, Integer>();
+            try {
+                for (WorkspaceBindingSummary binding : bindings) {
+                    patches.add(completion.submit(() -> {
+                        permits.acquire();
+                        try {
+                            awaitSlot();
+                            return scaleBinding(workspaceClient, binding, replicas);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                }
+
+                for (int i = 0; i < bindings.size(); i++) {
+                    Map<String, Object> outcome;
+                    try {
+                        outcome = completion.take().get();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (ExecutionException ex) {
+                        outcome = new LinkedHashMap<String, Object>();
+                        outcome.put("outcome", "failed");
+                        outcome.put("error", ex.getCause().toString());
+                    }
+                    totals.merge((String) outcome.get("outcome"), 1, Integer::sum);
+                    writer.write(GSON.toJson(outcome));
+                    writer.write("\n");
+                    writer.flush();
+                }
+            } finally {
+                cancel(patches);
+            }
+
+            Map<String, Object> summary = new LinkedHashMap<String, Object>();
+            summary.put("total", bindings.size());
+            summary.put("outcomes", totals);
+            writer.write(GSON.toJson(summary));
+            writer.write("\n");
+            writer.flush();
+        };
+    }
+
+    /**
+     * Reports the workspace state of a user of the realm.
+     *
+     * @param username The username of the user
+     * @return A JSON object describing the user's bindings
+     * @throws NotFoundException If the user is not in the realm
+     */
+    @GET
+    @Path("users/{username}/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response userStatus(@PathParam("username") String username) {
+        authorise(AdminRoles.VIEW_USERS);
+        WorkspaceKubernetesClient workspaceClient = workspaceClient();
+
+        UserModel user = session.users().getUserByUsername(session.getContext().getRealm(), username);
+        if (user == null) {
+            throw new NotFoundException(String.format("User '%s' not found", username));
+        }
+
+        Map<String, Object> status = new LinkedHashMap<String, Object>();
+        status.put("username", username);
+        WorkspaceSelection selection = WorkspaceSelection.read(user);
+        status.put("selectedBinding", selection != null ? selection.getBindingName() : null);
+        status.put("assignedSession", selection != null ? selection.getAssignedSession() : null);
+
+        WorkspaceActivationState activationState = requiredActionFactory.getActivationState();
+        WorkspaceActivationState.ActiveBinding active = activationState != null ? activationState.getActiveBinding(username) : null;
+        if (active != null) {
+            Map<String, Object> activeBinding = new LinkedHashMap<String, Object>();
+            activeBinding.put("name", active.getBindingName());
+            activeBinding.put("namespace", active.getNamespace());
+            activeBinding.put("activatedAt", active.getActivatedAt());
+            activeBinding.put("node", active.getNodeId());
+            status.put("activeBinding", activeBinding);
+        }
+
+        List<Map<String, Object>> bindings = new ArrayList<Map<String, Object>>();
+        for (WorkspaceBindingSummary binding : workspaceClient.getAllWorkspaceBindingSummariesForUser(username)) {
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("namespace", binding.getNamespace());
+            entry.put("name", binding.getName());
+            entry.put("workspace", binding.getWorkspace());
+            entry.put("replicas", binding.getReplicas());
+            bindings.add(entry);
+        }
+        status.put("bindings", bindings);
+        return Response.ok(GSON.toJson(status), MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Authenticates the bearer token of the request and checks that its user
+     * holds a role of the realm-management client.
+     *
+     * @param role The name of the required role
+     * @return The authenticated user
+     * @throws NotAuthorizedException If the request has no valid bearer token
+     * @throws ForbiddenException If the user does not hold the role
+     */
+    protected UserModel authorise(String role) {
+        AuthenticationManager.AuthResult auth = new AppAuthManager.BearerTokenAuthenticator(session).authenticate();
+        if (auth == null) {
+            throw new NotAuthorizedException("Bearer");
+        }
+
+        RealmModel realm = session.getContext().getRealm();
+        ClientModel realmManagement = realm.getClientByClientId(Constants.REALM_MANAGEMENT_CLIENT_ID);
+        RoleModel roleModel = realmManagement != null ? realmManagement.getRole(role) : null;
+        if (roleModel == null || !auth.getUser().hasRole(roleModel)) {
+            throw new ForbiddenException(String.format("Role '%s' is required", role));
+        }
+        return auth.getUser();
+    }
+
+    /**
+     * Lists the bindings a bulk scale request applies to, which are those
+     * matching its filters whose spec.username is a user of the realm.
+     *
+     * @param workspaceClient The client used to list the bindings
+     * @param request The request
+     * @return The bindings to scale
+     */
+    protected List<WorkspaceBindingSummary> selectBindings(WorkspaceKubernetesClient workspaceClient, BulkScaleRequest request) {
+        RealmModel realm = session.getContext().getRealm();
+        Map<String, Boolean> realmUsers = new HashMap<String, Boolean>();
+        List<WorkspaceBindingSummary> bindings = new ArrayList<WorkspaceBindingSummary>();
+        workspaceClient.forEachWorkspaceBinding(request.labelSelector, binding -> {
+            if (request.matches(binding) && isRealmUser(realm, binding.getUsername(), realmUsers)) {
+                bindings.add(binding);
+            }
+            return true;
+        });
+        return bindings;
+    }
+
+    /**
+     * @param realm The realm of the request
+     * @param username The spec.username of a binding, may be null
+     * @param realmUsers The usernames already looked up by the request,
+     * populated by this method
+     * @return true if the username is a user of the realm
+     */
+    protected boolean isRealmUser(RealmModel realm, String username, Map<String, Boolean> realmUsers) {
+        if (username == null || username.isEmpty()) {
+            return false;
+        }
+        return realmUsers.computeIfAbsent(username, name -> session.users().getUserByUsername(realm, name) != null);
+    }
+
+    protected WorkspaceKubernetesClient workspaceClient() {
+        if (requiredActionFactory == null || requiredActionFactory.getWorkspaceClient() == null) {
+            throw new ServiceUnavailableException("Workspace Client is not available");
+        }
+        return requiredActionFactory.getWorkspaceClient();
+    }
+
+    /**
+     * Cancels the patches of a request which have not completed, for example
+     * because the response could not be written or the request was
+     * interrupted, so that they do not keep holding the shared permits.
+     *
+     * @param patches The patches submitted for the request
+     */
+    protected static void cancel(List<Future<Map<String, Object>>> patches) {
+        int cancelled = 0;
+        for (Future<Map<String, Object>> patch : patches) {
+            if (patch.cancel(true)) {
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            LOG.warn(String.format("Cancelled %d Workspace Binding scale(s) of an incomplete bulk scale", cancelled));
+        }
+    }
+
+    /**
+     * Waits for the next slot allowed by the rate limit shared by every
+     * request, advancing it.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    protected void awaitSlot() throws InterruptedException {
+        long slot = nextSlot.getAndUpdate(next -> Math.max(next, System.nanoTime()) + patchIntervalNanos);
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Scales a single binding, skipping it if it already has the replica
+     * count. The recorded activation of the user is cleared when a binding is
+     * scaled to zero.
+     *
+     * @param workspaceClient The client used to patch the binding
+     * @param binding The binding to scale
+     * @param replicas The new replica count
+     * @return The outcome, written as a line of the response
+     */
+    protected Map<String, Object> scaleBinding(WorkspaceKubernetesClient workspaceClient, WorkspaceBindingSummary binding, Integer replicas) {
+        Map<String, Object> outcome = new LinkedHashMap<String, Object>();
+        outcome.put("namespace", binding.getNamespace());
+        outcome.put("name", binding.getName());
+        outcome.put("replicas", replicas);
+        if (replicas.equals(binding.getReplicas())) {
+            outcome.put("outcome", "skipped");
+            return outcome;
+        }
+
+        String error = workspaceClient.scaleWorkspaceBinding(binding.getNamespace(), binding.getName(), replicas);
+        if (error != null) {
+            outcome.put("outcome", "failed");
+            outcome.put("error", error);
+        } else {
+            outcome.put("outcome", "changed");
+            WorkspaceActivationState activationState = requiredActionFactory.getActivationState();
+            if (replicas == 0 && activationState != null && binding.getUsername() != null) {
+                activationState.clearActivation(binding.getUsername());
+            }
+        }
+        WorkspaceMetrics.increment(WorkspaceMetrics.ADMIN_SCALED, WorkspaceMetrics.TAG_OUTCOME, (String) outcome.get("outcome"));
+        return outcome;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * The body of a bulk scale request.
+     */
+    protected static class BulkScaleRequest {
+
+        protected Integer replicas;
+        protected String namespace;
+        protected String workspace;
+        protected String username;
+        protected String labelSelector;
+        protected Boolean all;
+
+        /**
+         * @return The reason the request is invalid, or null if it is valid
+         */
+        protected String validate() {
+            if (replicas == null || replicas < 0) {
+                return "replicas must be zero or more";
+            }
+            if (!isFiltered() && !Boolean.TRUE.equals(all)) {
+                return "A filter is required, or all must be true to scale every binding of the realm";
+            }
+            return null;
+        }
+
+        /**
+         * @return true if any filter is set
+         */
+        protected boolean isFiltered() {
+            return namespace != null || workspace != null || username != null
+                    || (labelSelector != null && !labelSelector.isBlank());
+        }
+
+        protected boolean matches(WorkspaceBindingSummary binding) {
+            return (namespace == null || namespace.equals(binding.getNamespace()))
+                    && (workspace == null || workspace.equals(binding.getWorkspace()))
+                    && (username == null || username.equals(binding.getUsername()));
+        }
+    }
+}
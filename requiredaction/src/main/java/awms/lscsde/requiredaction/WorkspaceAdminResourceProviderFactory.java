@@ -0,0 +1,98 @@
+/**
+ * A Keycloak realm resource factory for workspace administration.
+ * <p>
+ * This class registers the {@link WorkspaceAdminResourceProvider}, which
+ * exposes bulk scaling and status endpoints for workspace bindings under
+ * {@code /realms/{realm}/workspaces}.
+ *
+ * @see RealmResourceProviderFactory
+ * @see WorkspaceAdminResourceProvider
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.auto.service.AutoService;
+import org.keycloak.Config;
+import org.keycloak.authentication.RequiredActionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resource.RealmResourceProvider;
+import org.keycloak.services.resource.RealmResourceProviderFactory;
+
+/**
+ * Creates WorkspaceAdminResourceProvider instances sharing a single executor.
+ *
+ * The workspace client and activation state are those of the
+ * {@link WorkspaceRequiredActionFactory}, found through the session factory.
+ * Bulk operations are bounded by the {@code concurrency} and
+ * {@code patches-per-second} options of this provider, for example
+ * {@code --spi-realm-restapi-extension-workspaces-concurrency=8}. The limits
+ * apply to all requests to the node together, so concurrent requests share
+ * them rather than each getting their own.
+ */
+@AutoService(RealmResourceProviderFactory.class)
+public class WorkspaceAdminResourceProviderFactory implements RealmResourceProviderFactory {
+
+    public static final String PROVIDER_ID = "workspaces";
+    public static final String CONCURRENCY = "concurrency";
+    public static final String PATCHES_PER_SECOND = "patches-per-second";
+    protected static final int DEFAULT_CONCURRENCY = 8;
+    protected static final int DEFAULT_PATCHES_PER_SECOND = 10;
+
+    protected WorkspaceRequiredActionFactory requiredActionFactory;
+    protected ExecutorService executor;
+    protected int concurrency = DEFAULT_CONCURRENCY;
+    protected int patchesPerSecond = DEFAULT_PATCHES_PER_SECOND;
+    protected Semaphore permits;
+    protected AtomicLong nextSlot;
+
+    @Override
+    public RealmResourceProvider create(KeycloakSession session) {
+        return new WorkspaceAdminResourceProvider(session, requiredActionFactory, executor, permits, nextSlot, patchesPerSecond);
+    }
+
+    /**
+     * Reads the limits of bulk operations from the SPI scope of this
+     * provider, and creates the permits and rate limit shared by every
+     * request.
+     *
+     * @param scope The configuration scope of the provider
+     */
+    @Override
+    public void init(Config.Scope scope) {
+        if (scope != null) {
+            concurrency = WorkspaceClientConfig.getAtLeast(scope, CONCURRENCY, DEFAULT_CONCURRENCY, 1);
+            patchesPerSecond = WorkspaceClientConfig.getAtLeast(scope, PATCHES_PER_SECOND, DEFAULT_PATCHES_PER_SECOND, 1);
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        permits = new Semaphore(concurrency, true);
+        nextSlot = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Finds the workspace required action factory, whose shared components
+     * are used by the endpoints.
+     *
+     * @param factory The session factory of the server
+     */
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        requiredActionFactory = (WorkspaceRequiredActionFactory) factory.getProviderFactory(RequiredActionProvider.class, WorkspaceRequiredAction.PROVIDER_ID);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Measures the calls made to the Kubernetes API server.
+ *
+ * <p>
+ * This class is added to the HTTP client of the
+ * {@link WorkspaceKubernetesClient} so that every list, get and patch it
+ * issues, whichever method issues it, is timed and its errors are counted.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * An OkHttp interceptor publishing the following meters for each request:
+ * <ul>
+ * <li>{@code awms.workspace.api.requests}, a timer tagged by {@code verb}
+ * ({@code list}, {@code get}, {@code patch} or the HTTP method for anything
+ * else), {@code resource} (the plural of the custom resource) and
+ * {@code outcome}</li>
+ * <li>{@code awms.workspace.api.errors}, a counter tagged by {@code verb},
+ * {@code resource} and {@code status}, the HTTP status code or {@code io} if
+ * no response was received</li>
+ * </ul>
+ * Watches are long lived and are not measured.
+ */
+public class WorkspaceApiMetricsInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if ("true".equals(request.url().queryParameter("watch"))) {
+            return chain.proceed(request);
+        }
+
+        List<String> segments = request.url().pathSegments();
+        int resourceIndex = segments.indexOf("namespaces") >= 0 ? segments.indexOf("namespaces") + 2 : 3;
+        String resource = segments.size() > resourceIndex ? segments.get(resourceIndex) : "other";
+        boolean item = segments.size() > resourceIndex + 1;
+        String verb = switch (request.method()) {
+            case "GET" -> item ? "get" : "list";
+            case "PATCH" -> "patch";
+            default -> request.method().toLowerCase();
+        };
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException ex) {
+            WorkspaceMetrics.recordTime(WorkspaceMetrics.API_REQUESTS, start, false,
+                    WorkspaceMetrics.TAG_VERB, verb, WorkspaceMetrics.TAG_RESOURCE, resource);
+            WorkspaceMetrics.increment(WorkspaceMetrics.API_ERRORS,
+                    WorkspaceMetrics.TAG_VERB, verb, WorkspaceMetrics.TAG_RESOURCE, resource, WorkspaceMetrics.TAG_STATUS, "io");
+            throw ex;
+        }
+
+        WorkspaceMetrics.recordTime(WorkspaceMetrics.API_REQUESTS, start, response.isSuccessful(),
+                WorkspaceMetrics.TAG_VERB, verb, WorkspaceMetrics.TAG_RESOURCE, resource);
+        if (!response.isSuccessful()) {
+            WorkspaceMetrics.increment(WorkspaceMetrics.API_ERRORS,
+                    WorkspaceMetrics.TAG_VERB, verb, WorkspaceMetrics.TAG_RESOURCE, resource, WorkspaceMetrics.TAG_STATUS, String.valueOf(response.code()));
+        }
+        return response;
+    }
+}
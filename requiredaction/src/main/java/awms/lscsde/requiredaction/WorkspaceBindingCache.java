@@ -0,0 +1,183 @@
+/**
+ * Provides an informer-backed, in-memory view of the analytics workspace
+ * bindings in the cluster, indexed by the user each binding belongs to.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} to answer
+ * binding lookups without issuing LIST calls against the Kubernetes API
+ * server on every login.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBindingList;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import org.jboss.logging.Logger;
+
+/**
+ * Maintains a local store of V1AnalyticsWorkspaceBinding objects using shared
+ * informers that watch the analyticsworkspacebindings resource.
+ *
+ * The store carries a "by username" index which covers both ways a binding
+ * can be associated with a user:
+ * <ul>
+ * <li>Bindings labelled with the username label, by default
+ * {@code xlscsde.nhs.uk/username}, indexed by the label value.</li>
+ * <li>Bindings without that label, indexed by {@code spec.username}.</li>
+ * </ul>
+ *
+ * The index keys are prefixed so that a lookup matches exactly the same
+ * bindings as the label selector and the unlabelled scan would.
+ *
+ * @see SharedIndexInformer
+ */
+public class WorkspaceBindingCache {
+
+    public static final String USERNAME_INDEX = "byUsername";
+    protected static final String LABEL_KEY_PREFIX = "label:";
+    protected static final String SPEC_KEY_PREFIX = "spec:";
+    private static final Logger LOG = Logger.getLogger(WorkspaceBindingCache.class);
+
+    protected List<SharedInformerFactory> informerFactories = new ArrayList<>();
+    protected List<SharedIndexInformer<V1AnalyticsWorkspaceBinding>> informers = new ArrayList<>();
+    protected String usernameLabel;
+
+    /**
+     * Creates the informers for workspace bindings and registers the username
+     * index. One informer is created for each lister-watcher, so that each
+     * configured namespace is watched separately. The informers are not
+     * started until {@link #start()} is called.
+     *
+     * @param apiClient The client used for the LIST and WATCH calls, this
+     * should not have a read timeout as watches are long lived
+     * @param listerWatchers The LIST and WATCH calls to use, one per observed
+     * namespace
+     * @param resyncSeconds The resync period of the informers in seconds
+     * @param usernameLabel The label key holding the sanitised username
+     */
+    public WorkspaceBindingCache(ApiClient apiClient,
+            List<WorkspaceListerWatcher<V1AnalyticsWorkspaceBinding, V1AnalyticsWorkspaceBindingList>> listerWatchers,
+            long resyncSeconds, String usernameLabel) {
+        this.usernameLabel = usernameLabel;
+        for (WorkspaceListerWatcher<V1AnalyticsWorkspaceBinding, V1AnalyticsWorkspaceBindingList> listerWatcher : listerWatchers) {
+            SharedInformerFactory informerFactory = new SharedInformerFactory(apiClient);
+            SharedIndexInformer<V1AnalyticsWorkspaceBinding> informer = informerFactory.sharedIndexInformerFor(listerWatcher,
+                    V1AnalyticsWorkspaceBinding.class, TimeUnit.SECONDS.toMillis(resyncSeconds));
+
+            Map<String, Function<V1AnalyticsWorkspaceBinding, List<String>>> indexers = new HashMap<>();
+            indexers.put(USERNAME_INDEX, this::usernameIndexKeys);
+            informer.addIndexers(indexers);
+
+            informerFactories.add(informerFactory);
+            informers.add(informer);
+        }
+    }
+
+    /**
+     * Starts watching workspace bindings. The initial LIST is performed in the
+     * background, use {@link #hasSynced()} to determine whether the store can
+     * be relied upon.
+     */
+    public void start() {
+        LOG.info(String.format("Starting %d Workspace Binding informer(s)", informers.size()));
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.startAllRegisteredInformers();
+        }
+    }
+
+    /**
+     * Stops the informers and releases their watch connections.
+     */
+    public void stop() {
+        LOG.info("Stopping Workspace Binding informers");
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.stopAllRegisteredInformers();
+        }
+    }
+
+    /**
+     * Registers a listener called with every workspace binding added, updated or
+     * deleted in the cluster, including those delivered by the initial LIST.
+     *
+     * @param listener The listener to call
+     */
+    public void addChangeListener(Consumer<V1AnalyticsWorkspaceBinding> listener) {
+        for (SharedIndexInformer<V1AnalyticsWorkspaceBinding> informer : informers) {
+            informer.addEventHandler(new WorkspaceChangeHandler<V1AnalyticsWorkspaceBinding>(listener));
+        }
+    }
+
+    /**
+     * @return true once every informer has completed its initial LIST and the
+     * store reflects the state of the cluster
+     */
+    public boolean hasSynced() {
+        return informers.stream().allMatch(SharedIndexInformer::hasSynced);
+    }
+
+    /**
+     * Retrieves all workspace bindings associated with a user from the local
+     * store.
+     *
+     * @param username The username to fetch workspace bindings for
+     * @param usernameAsLabel The username sanitised for use as a label value
+     * @return A list of the bindings that are labelled for the user, followed
+     * by the unlabelled bindings whose spec.username matches the user
+     */
+    public List<V1AnalyticsWorkspaceBinding> getBindingsForUser(String username, String usernameAsLabel) {
+        List<V1AnalyticsWorkspaceBinding> bindings = new ArrayList<>();
+        for (SharedIndexInformer<V1AnalyticsWorkspaceBinding> informer : informers) {
+            bindings.addAll(informer.getIndexer().byIndex(USERNAME_INDEX, LABEL_KEY_PREFIX + usernameAsLabel));
+        }
+        for (SharedIndexInformer<V1AnalyticsWorkspaceBinding> informer : informers) {
+            bindings.addAll(informer.getIndexer().byIndex(USERNAME_INDEX, SPEC_KEY_PREFIX + username));
+        }
+        return bindings;
+    }
+
+    /**
+     * Retrieves a workspace binding from the local store.
+     *
+     * @param namespace The namespace of the workspace binding
+     * @param name The name of the workspace binding
+     * @return The binding, or null if it is not present in the store
+     */
+    public V1AnalyticsWorkspaceBinding get(String namespace, String name) {
+        String key = String.format("%s/%s", namespace, name);
+        for (SharedIndexInformer<V1AnalyticsWorkspaceBinding> informer : informers) {
+            V1AnalyticsWorkspaceBinding binding = informer.getIndexer().getByKey(key);
+            if (binding != null) {
+                return binding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Computes the username index keys of a workspace binding.
+     *
+     * @param binding The binding being indexed
+     * @return The label value if the username label is present, otherwise
+     * spec.username, or an empty list if neither is set
+     */
+    protected List<String> usernameIndexKeys(V1AnalyticsWorkspaceBinding binding) {
+        List<String> keys = new ArrayList<>();
+        Map<String, String> labels = binding.getMetadata() != null ? binding.getMetadata().getLabels() : null;
+        if (labels != null && labels.containsKey(usernameLabel)) {
+            keys.add(LABEL_KEY_PREFIX + labels.get(usernameLabel));
+        } else if (binding.getSpec() != null && binding.getSpec().getUsername() != null) {
+            keys.add(SPEC_KEY_PREFIX + binding.getSpec().getUsername());
+        }
+        return keys;
+    }
+}
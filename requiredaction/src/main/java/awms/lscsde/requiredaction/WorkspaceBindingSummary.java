@@ -0,0 +1,129 @@
+/**
+ * Represents a reduced view of an analytics workspace binding.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} to discover a
+ * user's bindings and their replica counts without building the full
+ * V1AnalyticsWorkspaceBinding model for every binding listed.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import com.google.gson.annotations.SerializedName;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+
+/**
+ * A projection of an analyticsworkspacebindings resource holding only the
+ * metadata and the spec.username, spec.workspace and spec.replicas fields.
+ *
+ * Any other fields in the API server response, including the status, are
+ * skipped while the response is read rather than deserialised into model
+ * objects.
+ *
+ * @see V1AnalyticsWorkspaceBinding
+ */
+public class WorkspaceBindingSummary implements KubernetesObject {
+
+    @SerializedName("apiVersion")
+    protected String apiVersion;
+
+    @SerializedName("kind")
+    protected String kind;
+
+    @SerializedName("metadata")
+    protected V1ObjectMeta metadata;
+
+    @SerializedName("spec")
+    protected Spec spec;
+
+    /**
+     * Creates a summary of a full binding, for example one held in the
+     * binding cache.
+     *
+     * @param binding The binding to summarise
+     * @return The summary
+     */
+    public static WorkspaceBindingSummary from(V1AnalyticsWorkspaceBinding binding) {
+        WorkspaceBindingSummary summary = new WorkspaceBindingSummary();
+        summary.apiVersion = binding.getApiVersion();
+        summary.kind = binding.getKind();
+        summary.metadata = binding.getMetadata();
+        summary.spec = new Spec();
+        if (binding.getSpec() != null) {
+            summary.spec.username = binding.getSpec().getUsername();
+            summary.spec.workspace = binding.getSpec().getWorkspace();
+            summary.spec.replicas = binding.getSpec().getReplicas();
+        }
+        return summary;
+    }
+
+    @Override
+    public String getApiVersion() {
+        return apiVersion;
+    }
+
+    @Override
+    public String getKind() {
+        return kind;
+    }
+
+    @Override
+    public V1ObjectMeta getMetadata() {
+        return metadata;
+    }
+
+    public Spec getSpec() {
+        return spec;
+    }
+
+    /**
+     * @return The namespace of the binding
+     */
+    public String getNamespace() {
+        return metadata.getNamespace();
+    }
+
+    /**
+     * @return The name of the binding
+     */
+    public String getName() {
+        return metadata.getName();
+    }
+
+    /**
+     * @return The username from spec.username, or null if there is none
+     */
+    public String getUsername() {
+        return spec != null ? spec.username : null;
+    }
+
+    /**
+     * @return The workspace from spec.workspace, or null if there is none
+     */
+    public String getWorkspace() {
+        return spec != null ? spec.workspace : null;
+    }
+
+    /**
+     * @return The replica count from spec.replicas, or null if it is not set
+     */
+    public Integer getReplicas() {
+        return spec != null ? spec.replicas : null;
+    }
+
+    /**
+     * The fields of the binding spec used to discover and scale bindings.
+     */
+    public static class Spec {
+
+        @SerializedName("username")
+        protected String username;
+
+        @SerializedName("workspace")
+        protected String workspace;
+
+        @SerializedName("replicas")
+        protected Integer replicas;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Represents a page of reduced analytics workspace bindings.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} as the list type
+ * when listing {@link WorkspaceBindingSummary} objects.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.annotations.SerializedName;
+import io.kubernetes.client.common.KubernetesListObject;
+import io.kubernetes.client.openapi.models.V1ListMeta;
+
+/**
+ * A list of WorkspaceBindingSummary objects as returned by a LIST of the
+ * analyticsworkspacebindings resource.
+ */
+public class WorkspaceBindingSummaryList implements KubernetesListObject {
+
+    @SerializedName("apiVersion")
+    protected String apiVersion;
+
+    @SerializedName("kind")
+    protected String kind;
+
+    @SerializedName("metadata")
+    protected V1ListMeta metadata;
+
+    @SerializedName("items")
+    protected List<WorkspaceBindingSummary> items = new ArrayList<WorkspaceBindingSummary>();
+
+    @Override
+    public String getApiVersion() {
+        return apiVersion;
+    }
+
+    @Override
+    public String getKind() {
+        return kind;
+    }
+
+    @Override
+    public V1ListMeta getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public List<WorkspaceBindingSummary> getItems() {
+        return items;
+    }
+}
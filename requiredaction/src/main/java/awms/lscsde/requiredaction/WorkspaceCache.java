@@ -0,0 +1,122 @@
+/**
+ * Provides an informer-backed, in-memory view of the analytics workspaces in
+ * the cluster, keyed by namespace and name.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} to resolve the
+ * workspaces referenced by a user's bindings without issuing a GET against
+ * the Kubernetes API server for each of them.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspace;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceList;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.openapi.ApiClient;
+import org.jboss.logging.Logger;
+
+/**
+ * Maintains a local store of V1AnalyticsWorkspace objects using shared
+ * informers that watch the analyticsworkspaces resource.
+ *
+ * The informer applies additions, updates and deletions as they are observed,
+ * so display names and specs served from the store track the cluster. Objects
+ * are stored under the standard {@code namespace/name} key.
+ *
+ * @see SharedIndexInformer
+ */
+public class WorkspaceCache {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceCache.class);
+
+    protected List<SharedInformerFactory> informerFactories = new ArrayList<>();
+    protected List<SharedIndexInformer<V1AnalyticsWorkspace>> informers = new ArrayList<>();
+
+    /**
+     * Creates the informers for workspaces, one for each lister-watcher so
+     * that each configured namespace is watched separately. The informers are
+     * not started until {@link #start()} is called.
+     *
+     * @param apiClient The client used for the LIST and WATCH calls, this
+     * should not have a read timeout as watches are long lived
+     * @param listerWatchers The LIST and WATCH calls to use, one per observed
+     * namespace
+     * @param resyncSeconds The resync period of the informers in seconds
+     */
+    public WorkspaceCache(ApiClient apiClient,
+            List<WorkspaceListerWatcher<V1AnalyticsWorkspace, V1AnalyticsWorkspaceList>> listerWatchers,
+            long resyncSeconds) {
+        for (WorkspaceListerWatcher<V1AnalyticsWorkspace, V1AnalyticsWorkspaceList> listerWatcher : listerWatchers) {
+            SharedInformerFactory informerFactory = new SharedInformerFactory(apiClient);
+            informers.add(informerFactory.sharedIndexInformerFor(listerWatcher, V1AnalyticsWorkspace.class,
+                    TimeUnit.SECONDS.toMillis(resyncSeconds)));
+            informerFactories.add(informerFactory);
+        }
+    }
+
+    /**
+     * Starts watching workspaces. The initial LIST is performed in the
+     * background, use {@link #hasSynced()} to determine whether the store can
+     * be relied upon.
+     */
+    public void start() {
+        LOG.info(String.format("Starting %d Workspace informer(s)", informers.size()));
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.startAllRegisteredInformers();
+        }
+    }
+
+    /**
+     * Stops the informers and releases their watch connections.
+     */
+    public void stop() {
+        LOG.info("Stopping Workspace informers");
+        for (SharedInformerFactory informerFactory : informerFactories) {
+            informerFactory.stopAllRegisteredInformers();
+        }
+    }
+
+    /**
+     * Registers a listener called with every workspace added, updated or
+     * deleted in the cluster, including those delivered by the initial LIST.
+     *
+     * @param listener The listener to call
+     */
+    public void addChangeListener(Consumer<V1AnalyticsWorkspace> listener) {
+        for (SharedIndexInformer<V1AnalyticsWorkspace> informer : informers) {
+            informer.addEventHandler(new WorkspaceChangeHandler<V1AnalyticsWorkspace>(listener));
+        }
+    }
+
+    /**
+     * @return true once every informer has completed its initial LIST and the
+     * store reflects the state of the cluster
+     */
+    public boolean hasSynced() {
+        return informers.stream().allMatch(SharedIndexInformer::hasSynced);
+    }
+
+    /**
+     * Retrieves a workspace from the local store.
+     *
+     * @param namespace The namespace of the workspace
+     * @param name The name of the workspace
+     * @return The workspace, or null if it is not present in the store
+     */
+    public V1AnalyticsWorkspace get(String namespace, String name) {
+        String key = String.format("%s/%s", namespace, name);
+        for (SharedIndexInformer<V1AnalyticsWorkspace> informer : informers) {
+            V1AnalyticsWorkspace workspace = informer.getIndexer().getByKey(key);
+            if (workspace != null) {
+                return workspace;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Passes changes observed by the workspace informers to a listener.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceBindingCache} and
+ * {@link WorkspaceCache} so that state derived from bindings and workspaces
+ * can be invalidated as soon as the objects change.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ResourceEventHandler;
+
+/**
+ * A ResourceEventHandler calling a listener with every object added, updated
+ * or deleted. For an update the listener is called with both the old and the
+ * new object. Updates which do not change the resourceVersion, such as those
+ * delivered by an informer resync, are ignored.
+ *
+ * @param <ApiType> The type of the observed resource
+ */
+public class WorkspaceChangeHandler<ApiType extends KubernetesObject> implements ResourceEventHandler<ApiType> {
+
+    protected Consumer<ApiType> listener;
+
+    /**
+     * @param listener Called with each changed object
+     */
+    public WorkspaceChangeHandler(Consumer<ApiType> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onAdd(ApiType obj) {
+        listener.accept(obj);
+    }
+
+    @Override
+    public void onUpdate(ApiType oldObj, ApiType newObj) {
+        if (oldObj != null && newObj != null && oldObj.getMetadata() != null && newObj.getMetadata() != null
+                && Objects.equals(oldObj.getMetadata().getResourceVersion(), newObj.getMetadata().getResourceVersion())) {
+            return;
+        }
+        if (oldObj != null) {
+            listener.accept(oldObj);
+        }
+        listener.accept(newObj);
+    }
+
+    @Override
+    public void onDelete(ApiType obj, boolean deletedFinalStateUnknown) {
+        listener.accept(obj);
+    }
+}
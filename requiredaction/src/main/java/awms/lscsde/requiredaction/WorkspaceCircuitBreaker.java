@@ -0,0 +1,170 @@
+/**
+ * Protects logins from a slow or failing Kubernetes API server.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} so that, while
+ * the API server is unavailable, lookups and activations fail fast or are
+ * answered from the last known state instead of holding Keycloak worker
+ * threads.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Gauge;
+import org.jboss.logging.Logger;
+
+/**
+ * A circuit breaker with three states:
+ * <ul>
+ * <li>closed, calls are made normally and consecutive failures are
+ * counted</li>
+ * <li>open, entered once the failure threshold is reached, calls are not made
+ * and the fallback is used until the open period has elapsed</li>
+ * <li>half open, a single trial call is made, closing the breaker if it
+ * succeeds and opening it again if it fails</li>
+ * </ul>
+ *
+ * A call fails if it throws a runtime exception, which includes exceeding its
+ * deadline. When a call fails, or is rejected while the breaker is open, the
+ * fallback is used if it has a value, otherwise the failure is rethrown or an
+ * {@link IllegalStateException} is thrown. A call can also return a result
+ * which reports a failure, such as an activation whose patches failed. That
+ * result is returned as it is, but counts as a failure of the call.
+ *
+ * The following meters are published:
+ * <ul>
+ * <li>{@code awms.workspace.circuit.state}, 0 when closed, 1 when half open
+ * and 2 when open</li>
+ * <li>{@code awms.workspace.circuit.rejected}, calls not made because the
+ * breaker was open, tagged by operation</li>
+ * <li>{@code awms.workspace.fallback.hits}, failed or rejected calls answered
+ * by the fallback, tagged by operation</li>
+ * </ul>
+ */
+public class WorkspaceCircuitBreaker {
+
+    public static final int CLOSED = 0;
+    public static final int HALF_OPEN = 1;
+    public static final int OPEN = 2;
+    private static final Logger LOG = Logger.getLogger(WorkspaceCircuitBreaker.class);
+
+    protected int failureThreshold;
+    protected long openNanos;
+    protected AtomicInteger state = new AtomicInteger(CLOSED);
+    protected int consecutiveFailures = 0;
+    protected long openedAt = 0L;
+
+    /**
+     * @param failureThreshold The number of consecutive failures that opens
+     * the breaker
+     * @param openSeconds The time in seconds the breaker stays open before a
+     * trial call is allowed
+     */
+    public WorkspaceCircuitBreaker(int failureThreshold, long openSeconds) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+        Gauge.builder(WorkspaceMetrics.CIRCUIT_STATE, state, AtomicInteger::get)
+                .register(WorkspaceMetrics.registry());
+    }
+
+    /**
+     * Makes a call through the breaker.
+     *
+     * @param operation The name of the operation, used in logs and metrics
+     * @param call The call to make
+     * @param fallback Supplies the value to use if the call fails or is
+     * rejected, or null if there is none
+     * @return The result of the call, or of the fallback
+     */
+    public <T> T execute(String operation, Supplier<T> call, Supplier<T> fallback) {
+        return execute(operation, call, fallback, result -> false);
+    }
+
+    /**
+     * Makes a call through the breaker, classifying the results it returns.
+     *
+     * @param operation The name of the operation, used in logs and metrics
+     * @param call The call to make
+     * @param fallback Supplies the value to use if the call fails or is
+     * rejected, or null if there is none
+     * @param failed Determines whether a result returned by the call reports a
+     * failure
+     * @return The result of the call, or of the fallback
+     */
+    public <T> T execute(String operation, Supplier<T> call, Supplier<T> fallback, Predicate<T> failed) {
+        if (!allowRequest()) {
+            WorkspaceMetrics.increment(WorkspaceMetrics.CIRCUIT_REJECTED, WorkspaceMetrics.TAG_OPERATION, operation);
+            T value = fallback.get();
+            if (value == null) {
+                throw new IllegalStateException(String.format("Circuit breaker is open, '%s' was not attempted", operation));
+            }
+            WorkspaceMetrics.increment(WorkspaceMetrics.FALLBACK_HITS, WorkspaceMetrics.TAG_OPERATION, operation);
+            return value;
+        }
+
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            onFailure(operation);
+            T value = fallback.get();
+            if (value == null) {
+                throw ex;
+            }
+            LOG.warn(String.format("Operation '%s' failed, using the last known result: %s", operation, ex));
+            WorkspaceMetrics.increment(WorkspaceMetrics.FALLBACK_HITS, WorkspaceMetrics.TAG_OPERATION, operation);
+            return value;
+        }
+        if (failed.test(result)) {
+            onFailure(operation);
+        } else {
+            onSuccess();
+        }
+        return result;
+    }
+
+    /**
+     * @return The current state, one of {@link #CLOSED}, {@link #HALF_OPEN} or
+     * {@link #OPEN}
+     */
+    public int getState() {
+        return state.get();
+    }
+
+    protected synchronized boolean allowRequest() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                LOG.info("Circuit breaker half open, allowing a trial call");
+                state.set(HALF_OPEN);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    protected synchronized void onSuccess() {
+        if (state.get() != CLOSED) {
+            LOG.info("Circuit breaker closed");
+        }
+        consecutiveFailures = 0;
+        state.set(CLOSED);
+    }
+
+    protected synchronized void onFailure(String operation) {
+        consecutiveFailures++;
+        if (state.get() == HALF_OPEN || (state.get() == CLOSED && consecutiveFailures >= failureThreshold)) {
+            LOG.warn(String.format("Circuit breaker opened after %d consecutive failure(s), last in '%s'", consecutiveFailures, operation));
+            openedAt = System.nanoTime();
+            state.set(OPEN);
+        }
+    }
+}
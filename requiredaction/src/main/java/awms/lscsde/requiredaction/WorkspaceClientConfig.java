@@ -0,0 +1,900 @@
+/**
+ * Holds the tunable settings of the workspace required action and the
+ * Kubernetes client it uses.
+ *
+ * <p>
+ * Values are read from the Keycloak SPI configuration of the
+ * {@code required-action} SPI for the {@code workspace} provider, for example
+ * {@code --spi-required-action-workspace-binding-cache-enabled=true}.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+
+/**
+ * Configuration for the {@link WorkspaceKubernetesClient}.
+ *
+ * The caches, queues and background tasks are disabled by default, so an
+ * empty SPI scope results in live LIST calls against the Kubernetes API
+ * server for every lookup, as in the original extension. The API client
+ * settings do not preserve the original behaviour: bindings and workspaces
+ * are listed in pages of {@value #DEFAULT_LIST_PAGE_SIZE} rather than in one
+ * response, and connecting to or reading from the API server times out after
+ * 10 seconds.
+ *
+ * Numeric settings below their minimum, such as zero activation workers, are
+ * ignored with a warning and the default is used instead. Zero is only
+ * accepted where it disables the setting or, for the cluster lock wait,
+ * means not waiting.
+ */
+public class WorkspaceClientConfig {
+
+    public static final String NAMESPACES = "namespaces";
+    public static final String BINDING_LABEL_SELECTOR = "binding-label-selector";
+    public static final String WORKSPACE_LABEL_SELECTOR = "workspace-label-selector";
+    public static final String USERNAME_LABEL = "username-label";
+    public static final String BINDING_CACHE_ENABLED = "binding-cache-enabled";
+    public static final String BINDING_CACHE_RESYNC_SECONDS = "binding-cache-resync-seconds";
+    public static final String WORKSPACE_CACHE_ENABLED = "workspace-cache-enabled";
+    public static final String WORKSPACE_CACHE_RESYNC_SECONDS = "workspace-cache-resync-seconds";
+    public static final String PARALLEL_PATCH_ENABLED = "parallel-patch-enabled";
+    public static final String PATCH_CONCURRENCY_PER_USER = "patch-concurrency-per-user";
+    public static final String PATCH_CONCURRENCY_GLOBAL = "patch-concurrency-global";
+    public static final String PATCH_TIMEOUT_MILLIS = "patch-timeout-millis";
+    public static final String READINESS_TIMEOUT_SECONDS = "readiness-timeout-seconds";
+    public static final String ASYNC_ACTIVATION_ENABLED = "async-activation-enabled";
+    public static final String ACTIVATION_WORKERS = "activation-workers";
+    public static final String ACTIVATION_QUEUE_CAPACITY = "activation-queue-capacity";
+    public static final String ACTIVATION_MEMO_ENABLED = "activation-memo-enabled";
+    public static final String ACTIVATION_MEMO_MAX_ENTRIES = "activation-memo-max-entries";
+    public static final String ACTIVATION_MEMO_TTL_SECONDS = "activation-memo-ttl-seconds";
+    public static final String CLUSTER_STATE_ENABLED = "cluster-state-enabled";
+    public static final String CLUSTER_STATE_TTL_SECONDS = "cluster-state-ttl-seconds";
+    public static final String CLUSTER_LOCK_TTL_SECONDS = "cluster-lock-ttl-seconds";
+    public static final String CLUSTER_LOCK_WAIT_MILLIS = "cluster-lock-wait-millis";
+    public static final String LIST_PAGE_SIZE = "list-page-size";
+    public static final String CONNECTION_POOL_MAX_IDLE = "connection-pool-max-idle";
+    public static final String CONNECTION_KEEP_ALIVE_SECONDS = "connection-keep-alive-seconds";
+    public static final String HTTP2_ENABLED = "http2-enabled";
+    public static final String CONNECT_TIMEOUT_MILLIS = "connect-timeout-millis";
+    public static final String READ_TIMEOUT_MILLIS = "read-timeout-millis";
+    public static final String PREWARM_ENABLED = "prewarm-enabled";
+    public static final String PREWARM_TIMEOUT_SECONDS = "prewarm-timeout-seconds";
+    public static final String CALL_TIMEOUT_MILLIS = "call-timeout-millis";
+    public static final String LOOKUP_DEADLINE_MILLIS = "lookup-deadline-millis";
+    public static final String ACTIVATION_DEADLINE_MILLIS = "activation-deadline-millis";
+    public static final String CIRCUIT_BREAKER_ENABLED = "circuit-breaker-enabled";
+    public static final String CIRCUIT_BREAKER_FAILURE_THRESHOLD = "circuit-breaker-failure-threshold";
+    public static final String CIRCUIT_BREAKER_OPEN_SECONDS = "circuit-breaker-open-seconds";
+    public static final String FALLBACK_MAX_ENTRIES = "fallback-max-entries";
+    public static final String FALLBACK_TTL_SECONDS = "fallback-ttl-seconds";
+    public static final String SELECTION_CACHE_ENABLED = "selection-cache-enabled";
+    public static final String SELECTION_CACHE_MAX_ENTRIES = "selection-cache-max-entries";
+    public static final String SELECTION_CACHE_TTL_SECONDS = "selection-cache-ttl-seconds";
+    public static final String REAPER_ENABLED = "reaper-enabled";
+    public static final String REAPER_DRY_RUN = "reaper-dry-run";
+    public static final String REAPER_INTERVAL_SECONDS = "reaper-interval-seconds";
+    public static final String REAPER_IDLE_SECONDS = "reaper-idle-seconds";
+    public static final String REAPER_BATCH_SIZE = "reaper-batch-size";
+    public static final String REAPER_PATCHES_PER_SECOND = "reaper-patches-per-second";
+    public static final String LABEL_BACKFILL_ENABLED = "label-backfill-enabled";
+    public static final String LABEL_BACKFILL_INTERVAL_SECONDS = "label-backfill-interval-seconds";
+    public static final String LABEL_BACKFILL_PATCHES_PER_SECOND = "label-backfill-patches-per-second";
+    public static final String LABEL_BACKFILL_BATCH_SIZE = "label-backfill-batch-size";
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceClientConfig.class);
+
+    protected static final String DEFAULT_USERNAME_LABEL = "xlscsde.nhs.uk/username";
+    protected static final long DEFAULT_BINDING_CACHE_RESYNC_SECONDS = 300L;
+    protected static final long DEFAULT_WORKSPACE_CACHE_RESYNC_SECONDS = 300L;
+    protected static final int DEFAULT_PATCH_CONCURRENCY_PER_USER = 4;
+    protected static final int DEFAULT_PATCH_CONCURRENCY_GLOBAL = 32;
+    protected static final long DEFAULT_PATCH_TIMEOUT_MILLIS = 5000L;
+    protected static final long DEFAULT_READINESS_TIMEOUT_SECONDS = 3L;
+    protected static final int DEFAULT_ACTIVATION_WORKERS = 4;
+    protected static final int DEFAULT_ACTIVATION_QUEUE_CAPACITY = 1000;
+    protected static final int DEFAULT_ACTIVATION_MEMO_MAX_ENTRIES = 10000;
+    protected static final long DEFAULT_ACTIVATION_MEMO_TTL_SECONDS = 900L;
+    protected static final long DEFAULT_CLUSTER_STATE_TTL_SECONDS = 300L;
+    protected static final long DEFAULT_CLUSTER_LOCK_TTL_SECONDS = 30L;
+    protected static final long DEFAULT_CLUSTER_LOCK_WAIT_MILLIS = 5000L;
+    protected static final int DEFAULT_LIST_PAGE_SIZE = 500;
+    protected static final int DEFAULT_CONNECTION_POOL_MAX_IDLE = 5;
+    protected static final long DEFAULT_CONNECTION_KEEP_ALIVE_SECONDS = 300L;
+    protected static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000L;
+    protected static final long DEFAULT_READ_TIMEOUT_MILLIS = 10000L;
+    protected static final long DEFAULT_PREWARM_TIMEOUT_SECONDS = 30L;
+    protected static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    protected static final long DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30L;
+    protected static final int DEFAULT_FALLBACK_MAX_ENTRIES = 10000;
+    protected static final long DEFAULT_FALLBACK_TTL_SECONDS = 3600L;
+    protected static final int DEFAULT_SELECTION_CACHE_MAX_ENTRIES = 10000;
+    protected static final long DEFAULT_SELECTION_CACHE_TTL_SECONDS = 60L;
+    protected static final long DEFAULT_REAPER_INTERVAL_SECONDS = 300L;
+    protected static final long DEFAULT_REAPER_IDLE_SECONDS = 3600L;
+    protected static final int DEFAULT_REAPER_BATCH_SIZE = 50;
+    protected static final int DEFAULT_REAPER_PATCHES_PER_SECOND = 5;
+    protected static final long DEFAULT_LABEL_BACKFILL_INTERVAL_SECONDS = 300L;
+    protected static final int DEFAULT_LABEL_BACKFILL_PATCHES_PER_SECOND = 5;
+    protected static final int DEFAULT_LABEL_BACKFILL_BATCH_SIZE = 50;
+
+    protected List<String> namespaces = new ArrayList<String>();
+    protected String bindingLabelSelector;
+    protected String workspaceLabelSelector;
+    protected String usernameLabel = DEFAULT_USERNAME_LABEL;
+    protected boolean bindingCacheEnabled = false;
+    protected long bindingCacheResyncSeconds = DEFAULT_BINDING_CACHE_RESYNC_SECONDS;
+    protected boolean workspaceCacheEnabled = false;
+    protected long workspaceCacheResyncSeconds = DEFAULT_WORKSPACE_CACHE_RESYNC_SECONDS;
+    protected boolean parallelPatchEnabled = false;
+    protected int patchConcurrencyPerUser = DEFAULT_PATCH_CONCURRENCY_PER_USER;
+    protected int patchConcurrencyGlobal = DEFAULT_PATCH_CONCURRENCY_GLOBAL;
+    protected long patchTimeoutMillis = DEFAULT_PATCH_TIMEOUT_MILLIS;
+    protected long readinessTimeoutSeconds = DEFAULT_READINESS_TIMEOUT_SECONDS;
+    protected boolean asyncActivationEnabled = false;
+    protected int activationWorkers = DEFAULT_ACTIVATION_WORKERS;
+    protected int activationQueueCapacity = DEFAULT_ACTIVATION_QUEUE_CAPACITY;
+    protected boolean activationMemoEnabled = false;
+    protected int activationMemoMaxEntries = DEFAULT_ACTIVATION_MEMO_MAX_ENTRIES;
+    protected long activationMemoTtlSeconds = DEFAULT_ACTIVATION_MEMO_TTL_SECONDS;
+    protected boolean clusterStateEnabled = false;
+    protected long clusterStateTtlSeconds = DEFAULT_CLUSTER_STATE_TTL_SECONDS;
+    protected long clusterLockTtlSeconds = DEFAULT_CLUSTER_LOCK_TTL_SECONDS;
+    protected long clusterLockWaitMillis = DEFAULT_CLUSTER_LOCK_WAIT_MILLIS;
+    protected int listPageSize = DEFAULT_LIST_PAGE_SIZE;
+    protected int connectionPoolMaxIdle = DEFAULT_CONNECTION_POOL_MAX_IDLE;
+    protected long connectionKeepAliveSeconds = DEFAULT_CONNECTION_KEEP_ALIVE_SECONDS;
+    protected boolean http2Enabled = true;
+    protected long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    protected long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    protected boolean prewarmEnabled = false;
+    protected long prewarmTimeoutSeconds = DEFAULT_PREWARM_TIMEOUT_SECONDS;
+    protected long callTimeoutMillis = 0L;
+    protected long lookupDeadlineMillis = 0L;
+    protected long activationDeadlineMillis = 0L;
+    protected boolean circuitBreakerEnabled = false;
+    protected int circuitBreakerFailureThreshold = DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+    protected long circuitBreakerOpenSeconds = DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS;
+    protected int fallbackMaxEntries = DEFAULT_FALLBACK_MAX_ENTRIES;
+    protected long fallbackTtlSeconds = DEFAULT_FALLBACK_TTL_SECONDS;
+    protected boolean selectionCacheEnabled = false;
+    protected int selectionCacheMaxEntries = DEFAULT_SELECTION_CACHE_MAX_ENTRIES;
+    protected long selectionCacheTtlSeconds = DEFAULT_SELECTION_CACHE_TTL_SECONDS;
+    protected boolean reaperEnabled = false;
+    protected boolean reaperDryRun = false;
+    protected long reaperIntervalSeconds = DEFAULT_REAPER_INTERVAL_SECONDS;
+    protected long reaperIdleSeconds = DEFAULT_REAPER_IDLE_SECONDS;
+    protected int reaperBatchSize = DEFAULT_REAPER_BATCH_SIZE;
+    protected int reaperPatchesPerSecond = DEFAULT_REAPER_PATCHES_PER_SECOND;
+    protected boolean labelBackfillEnabled = false;
+    protected long labelBackfillIntervalSeconds = DEFAULT_LABEL_BACKFILL_INTERVAL_SECONDS;
+    protected int labelBackfillPatchesPerSecond = DEFAULT_LABEL_BACKFILL_PATCHES_PER_SECOND;
+    protected int labelBackfillBatchSize = DEFAULT_LABEL_BACKFILL_BATCH_SIZE;
+
+    /**
+     * Creates a configuration populated with the default values.
+     */
+    public WorkspaceClientConfig() {
+    }
+
+    /**
+     * Creates a configuration from the Keycloak SPI scope supplied to
+     * {@code init}. Missing keys, and numeric values below their minimum,
+     * fall back to the defaults.
+     *
+     * @param scope The configuration scope of the provider, may be null
+     * @return The populated configuration
+     */
+    public static WorkspaceClientConfig fromScope(Config.Scope scope) {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        if (scope == null) {
+            return config;
+        }
+
+        String[] namespaces = scope.getArray(NAMESPACES);
+        if (namespaces != null) {
+            config.namespaces = Arrays.stream(namespaces)
+                    .map(String::trim)
+                    .filter(namespace -> !namespace.isEmpty())
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+        config.bindingLabelSelector = scope.get(BINDING_LABEL_SELECTOR, config.bindingLabelSelector);
+        config.workspaceLabelSelector = scope.get(WORKSPACE_LABEL_SELECTOR, config.workspaceLabelSelector);
+        config.usernameLabel = scope.get(USERNAME_LABEL, config.usernameLabel);
+        config.bindingCacheEnabled = scope.getBoolean(BINDING_CACHE_ENABLED, config.bindingCacheEnabled);
+        config.bindingCacheResyncSeconds = getAtLeast(scope, BINDING_CACHE_RESYNC_SECONDS, config.bindingCacheResyncSeconds, 0);
+        config.workspaceCacheEnabled = scope.getBoolean(WORKSPACE_CACHE_ENABLED, config.workspaceCacheEnabled);
+        config.workspaceCacheResyncSeconds = getAtLeast(scope, WORKSPACE_CACHE_RESYNC_SECONDS, config.workspaceCacheResyncSeconds, 0);
+        config.parallelPatchEnabled = scope.getBoolean(PARALLEL_PATCH_ENABLED, config.parallelPatchEnabled);
+        config.patchConcurrencyPerUser = getAtLeast(scope, PATCH_CONCURRENCY_PER_USER, config.patchConcurrencyPerUser, 1);
+        config.patchConcurrencyGlobal = getAtLeast(scope, PATCH_CONCURRENCY_GLOBAL, config.patchConcurrencyGlobal, 1);
+        config.patchTimeoutMillis = getAtLeast(scope, PATCH_TIMEOUT_MILLIS, config.patchTimeoutMillis, 1);
+        config.readinessTimeoutSeconds = getAtLeast(scope, READINESS_TIMEOUT_SECONDS, config.readinessTimeoutSeconds, 0);
+        config.asyncActivationEnabled = scope.getBoolean(ASYNC_ACTIVATION_ENABLED, config.asyncActivationEnabled);
+        config.activationWorkers = getAtLeast(scope, ACTIVATION_WORKERS, config.activationWorkers, 1);
+        config.activationQueueCapacity = getAtLeast(scope, ACTIVATION_QUEUE_CAPACITY, config.activationQueueCapacity, 1);
+        config.activationMemoEnabled = scope.getBoolean(ACTIVATION_MEMO_ENABLED, config.activationMemoEnabled);
+        config.activationMemoMaxEntries = getAtLeast(scope, ACTIVATION_MEMO_MAX_ENTRIES, config.activationMemoMaxEntries, 1);
+        config.activationMemoTtlSeconds = getAtLeast(scope, ACTIVATION_MEMO_TTL_SECONDS, config.activationMemoTtlSeconds, 1);
+        config.clusterStateEnabled = scope.getBoolean(CLUSTER_STATE_ENABLED, config.clusterStateEnabled);
+        config.clusterStateTtlSeconds = getAtLeast(scope, CLUSTER_STATE_TTL_SECONDS, config.clusterStateTtlSeconds, 1);
+        config.clusterLockTtlSeconds = getAtLeast(scope, CLUSTER_LOCK_TTL_SECONDS, config.clusterLockTtlSeconds, 1);
+        config.clusterLockWaitMillis = getAtLeast(scope, CLUSTER_LOCK_WAIT_MILLIS, config.clusterLockWaitMillis, 0);
+        config.listPageSize = getAtLeast(scope, LIST_PAGE_SIZE, config.listPageSize, 0);
+        config.connectionPoolMaxIdle = getAtLeast(scope, CONNECTION_POOL_MAX_IDLE, config.connectionPoolMaxIdle, 0);
+        config.connectionKeepAliveSeconds = getAtLeast(scope, CONNECTION_KEEP_ALIVE_SECONDS, config.connectionKeepAliveSeconds, 1);
+        config.http2Enabled = scope.getBoolean(HTTP2_ENABLED, config.http2Enabled);
+        config.connectTimeoutMillis = getAtLeast(scope, CONNECT_TIMEOUT_MILLIS, config.connectTimeoutMillis, 0);
+        config.readTimeoutMillis = getAtLeast(scope, READ_TIMEOUT_MILLIS, config.readTimeoutMillis, 0);
+        config.prewarmEnabled = scope.getBoolean(PREWARM_ENABLED, config.prewarmEnabled);
+        config.prewarmTimeoutSeconds = getAtLeast(scope, PREWARM_TIMEOUT_SECONDS, config.prewarmTimeoutSeconds, 0);
+        config.callTimeoutMillis = getAtLeast(scope, CALL_TIMEOUT_MILLIS, config.callTimeoutMillis, 0);
+        config.lookupDeadlineMillis = getAtLeast(scope, LOOKUP_DEADLINE_MILLIS, config.lookupDeadlineMillis, 0);
+        config.activationDeadlineMillis = getAtLeast(scope, ACTIVATION_DEADLINE_MILLIS, config.activationDeadlineMillis, 0);
+        config.circuitBreakerEnabled = scope.getBoolean(CIRCUIT_BREAKER_ENABLED, config.circuitBreakerEnabled);
+        config.circuitBreakerFailureThreshold = getAtLeast(scope, CIRCUIT_BREAKER_FAILURE_THRESHOLD, config.circuitBreakerFailureThreshold, 1);
+        config.circuitBreakerOpenSeconds = getAtLeast(scope, CIRCUIT_BREAKER_OPEN_SECONDS, config.circuitBreakerOpenSeconds, 1);
+        config.fallbackMaxEntries = getAtLeast(scope, FALLBACK_MAX_ENTRIES, config.fallbackMaxEntries, 1);
+        config.fallbackTtlSeconds = getAtLeast(scope, FALLBACK_TTL_SECONDS, config.fallbackTtlSeconds, 1);
+        config.selectionCacheEnabled = scope.getBoolean(SELECTION_CACHE_ENABLED, config.selectionCacheEnabled);
+        config.selectionCacheMaxEntries = getAtLeast(scope, SELECTION_CACHE_MAX_ENTRIES, config.selectionCacheMaxEntries, 1);
+        config.selectionCacheTtlSeconds = getAtLeast(scope, SELECTION_CACHE_TTL_SECONDS, config.selectionCacheTtlSeconds, 1);
+        config.reaperEnabled = scope.getBoolean(REAPER_ENABLED, config.reaperEnabled);
+        config.reaperDryRun = scope.getBoolean(REAPER_DRY_RUN, config.reaperDryRun);
+        config.reaperIntervalSeconds = getAtLeast(scope, REAPER_INTERVAL_SECONDS, config.reaperIntervalSeconds, 1);
+        config.reaperIdleSeconds = getAtLeast(scope, REAPER_IDLE_SECONDS, config.reaperIdleSeconds, 1);
+        config.reaperBatchSize = getAtLeast(scope, REAPER_BATCH_SIZE, config.reaperBatchSize, 1);
+        config.reaperPatchesPerSecond = getAtLeast(scope, REAPER_PATCHES_PER_SECOND, config.reaperPatchesPerSecond, 1);
+        config.labelBackfillEnabled = scope.getBoolean(LABEL_BACKFILL_ENABLED, config.labelBackfillEnabled);
+        config.labelBackfillIntervalSeconds = getAtLeast(scope, LABEL_BACKFILL_INTERVAL_SECONDS, config.labelBackfillIntervalSeconds, 1);
+        config.labelBackfillPatchesPerSecond = getAtLeast(scope, LABEL_BACKFILL_PATCHES_PER_SECOND, config.labelBackfillPatchesPerSecond, 1);
+        config.labelBackfillBatchSize = getAtLeast(scope, LABEL_BACKFILL_BATCH_SIZE, config.labelBackfillBatchSize, 1);
+        return config;
+    }
+
+    /**
+     * Reads an integer setting, ignoring values below the minimum.
+     *
+     * @param scope The configuration scope of the provider
+     * @param key The key of the setting
+     * @param defaultValue The value used if the setting is missing or invalid
+     * @param minimum The lowest valid value
+     * @return The value of the setting
+     */
+    protected static int getAtLeast(Config.Scope scope, String key, int defaultValue, int minimum) {
+        int value = scope.getInt(key, defaultValue);
+        if (value < minimum) {
+            LOG.warn(String.format("Ignoring '%s' of %d, it must be at least %d, using %d", key, value, minimum, defaultValue));
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a long setting, ignoring values below the minimum.
+     *
+     * @param scope The configuration scope of the provider
+     * @param key The key of the setting
+     * @param defaultValue The value used if the setting is missing or invalid
+     * @param minimum The lowest valid value
+     * @return The value of the setting
+     */
+    protected static long getAtLeast(Config.Scope scope, String key, long defaultValue, long minimum) {
+        long value = scope.getLong(key, defaultValue);
+        if (value < minimum) {
+            LOG.warn(String.format("Ignoring '%s' of %d, it must be at least %d, using %d", key, value, minimum, defaultValue));
+            return defaultValue;
+        }
+        return value;
+    }
+
+    /**
+     * @return The namespaces that bindings and workspaces are listed and
+     * watched in, empty to use all namespaces
+     */
+    public List<String> getNamespaces() {
+        return namespaces;
+    }
+
+    public void setNamespaces(List<String> namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * @return An additional label selector applied to every LIST and WATCH of
+     * workspace bindings, or null for none
+     */
+    public String getBindingLabelSelector() {
+        return bindingLabelSelector;
+    }
+
+    public void setBindingLabelSelector(String bindingLabelSelector) {
+        this.bindingLabelSelector = bindingLabelSelector;
+    }
+
+    /**
+     * @return An additional label selector applied to every LIST and WATCH of
+     * workspaces, or null for none
+     */
+    public String getWorkspaceLabelSelector() {
+        return workspaceLabelSelector;
+    }
+
+    public void setWorkspaceLabelSelector(String workspaceLabelSelector) {
+        this.workspaceLabelSelector = workspaceLabelSelector;
+    }
+
+    /**
+     * @return The label key holding the sanitised username on workspace
+     * bindings
+     */
+    public String getUsernameLabel() {
+        return usernameLabel;
+    }
+
+    public void setUsernameLabel(String usernameLabel) {
+        this.usernameLabel = usernameLabel;
+    }
+
+    /**
+     * @return true if workspace binding lookups should be answered from an
+     * informer-backed in-memory index rather than live LIST calls
+     */
+    public boolean isBindingCacheEnabled() {
+        return bindingCacheEnabled;
+    }
+
+    public void setBindingCacheEnabled(boolean bindingCacheEnabled) {
+        this.bindingCacheEnabled = bindingCacheEnabled;
+    }
+
+    /**
+     * @return The interval in seconds at which the binding informer replays
+     * its store to registered handlers, 0 disables resync
+     */
+    public long getBindingCacheResyncSeconds() {
+        return bindingCacheResyncSeconds;
+    }
+
+    public void setBindingCacheResyncSeconds(long bindingCacheResyncSeconds) {
+        this.bindingCacheResyncSeconds = bindingCacheResyncSeconds;
+    }
+
+    /**
+     * @return true if workspaces should be served from an informer-backed
+     * in-memory store rather than fetched from the Kubernetes API server
+     */
+    public boolean isWorkspaceCacheEnabled() {
+        return workspaceCacheEnabled;
+    }
+
+    public void setWorkspaceCacheEnabled(boolean workspaceCacheEnabled) {
+        this.workspaceCacheEnabled = workspaceCacheEnabled;
+    }
+
+    /**
+     * @return The interval in seconds at which the workspace informer replays
+     * its store to registered handlers, 0 disables resync
+     */
+    public long getWorkspaceCacheResyncSeconds() {
+        return workspaceCacheResyncSeconds;
+    }
+
+    public void setWorkspaceCacheResyncSeconds(long workspaceCacheResyncSeconds) {
+        this.workspaceCacheResyncSeconds = workspaceCacheResyncSeconds;
+    }
+
+    /**
+     * @return true if replica patches should be issued concurrently on
+     * virtual threads rather than one after another
+     */
+    public boolean isParallelPatchEnabled() {
+        return parallelPatchEnabled;
+    }
+
+    public void setParallelPatchEnabled(boolean parallelPatchEnabled) {
+        this.parallelPatchEnabled = parallelPatchEnabled;
+    }
+
+    /**
+     * @return The maximum number of patches in flight for a single user
+     */
+    public int getPatchConcurrencyPerUser() {
+        return patchConcurrencyPerUser;
+    }
+
+    public void setPatchConcurrencyPerUser(int patchConcurrencyPerUser) {
+        this.patchConcurrencyPerUser = patchConcurrencyPerUser;
+    }
+
+    /**
+     * @return The maximum number of patches in flight across all users
+     */
+    public int getPatchConcurrencyGlobal() {
+        return patchConcurrencyGlobal;
+    }
+
+    public void setPatchConcurrencyGlobal(int patchConcurrencyGlobal) {
+        this.patchConcurrencyGlobal = patchConcurrencyGlobal;
+    }
+
+    /**
+     * @return The time in milliseconds to wait for a single patch, including
+     * time spent waiting for a concurrency permit
+     */
+    public long getPatchTimeoutMillis() {
+        return patchTimeoutMillis;
+    }
+
+    public void setPatchTimeoutMillis(long patchTimeoutMillis) {
+        this.patchTimeoutMillis = patchTimeoutMillis;
+    }
+
+    /**
+     * @return The maximum time in seconds a request thread waits for the
+     * selected workspace binding to report ready, 0 disables the wait
+     */
+    public long getReadinessTimeoutSeconds() {
+        return readinessTimeoutSeconds;
+    }
+
+    public void setReadinessTimeoutSeconds(long readinessTimeoutSeconds) {
+        this.readinessTimeoutSeconds = readinessTimeoutSeconds;
+    }
+
+    /**
+     * @return true if evaluateTriggers should queue the activation of the
+     * user's binding and return, rather than activating it synchronously
+     */
+    public boolean isAsyncActivationEnabled() {
+        return asyncActivationEnabled;
+    }
+
+    public void setAsyncActivationEnabled(boolean asyncActivationEnabled) {
+        this.asyncActivationEnabled = asyncActivationEnabled;
+    }
+
+    /**
+     * @return The number of threads draining the activation queue
+     */
+    public int getActivationWorkers() {
+        return activationWorkers;
+    }
+
+    public void setActivationWorkers(int activationWorkers) {
+        this.activationWorkers = activationWorkers;
+    }
+
+    /**
+     * @return The maximum number of queued activations, once reached
+     * activations run on the calling thread
+     */
+    public int getActivationQueueCapacity() {
+        return activationQueueCapacity;
+    }
+
+    public void setActivationQueueCapacity(int activationQueueCapacity) {
+        this.activationQueueCapacity = activationQueueCapacity;
+    }
+
+    /**
+     * @return true if successful activations should be remembered per SSO
+     * session, so that later triggers in the same session skip Kubernetes
+     */
+    public boolean isActivationMemoEnabled() {
+        return activationMemoEnabled;
+    }
+
+    public void setActivationMemoEnabled(boolean activationMemoEnabled) {
+        this.activationMemoEnabled = activationMemoEnabled;
+    }
+
+    /**
+     * @return The maximum number of remembered activations
+     */
+    public int getActivationMemoMaxEntries() {
+        return activationMemoMaxEntries;
+    }
+
+    public void setActivationMemoMaxEntries(int activationMemoMaxEntries) {
+        this.activationMemoMaxEntries = activationMemoMaxEntries;
+    }
+
+    /**
+     * @return The time in seconds an activation is remembered for
+     */
+    public long getActivationMemoTtlSeconds() {
+        return activationMemoTtlSeconds;
+    }
+
+    public void setActivationMemoTtlSeconds(long activationMemoTtlSeconds) {
+        this.activationMemoTtlSeconds = activationMemoTtlSeconds;
+    }
+
+    /**
+     * @return true if activation state should be shared across the Keycloak
+     * cluster through a distributed Infinispan cache
+     */
+    public boolean isClusterStateEnabled() {
+        return clusterStateEnabled;
+    }
+
+    public void setClusterStateEnabled(boolean clusterStateEnabled) {
+        this.clusterStateEnabled = clusterStateEnabled;
+    }
+
+    /**
+     * @return The time in seconds a recorded activation is trusted by other
+     * nodes
+     */
+    public long getClusterStateTtlSeconds() {
+        return clusterStateTtlSeconds;
+    }
+
+    public void setClusterStateTtlSeconds(long clusterStateTtlSeconds) {
+        this.clusterStateTtlSeconds = clusterStateTtlSeconds;
+    }
+
+    /**
+     * @return The time in seconds after which an unreleased activation lock
+     * expires
+     */
+    public long getClusterLockTtlSeconds() {
+        return clusterLockTtlSeconds;
+    }
+
+    public void setClusterLockTtlSeconds(long clusterLockTtlSeconds) {
+        this.clusterLockTtlSeconds = clusterLockTtlSeconds;
+    }
+
+    /**
+     * @return The time in milliseconds to wait for another node's activation
+     * lock on the same user before proceeding without it
+     */
+    public long getClusterLockWaitMillis() {
+        return clusterLockWaitMillis;
+    }
+
+    public void setClusterLockWaitMillis(long clusterLockWaitMillis) {
+        this.clusterLockWaitMillis = clusterLockWaitMillis;
+    }
+
+    /**
+     * @return true if a background reconciler should add the username label
+     * to bindings which are missing it
+     */
+    public boolean isLabelBackfillEnabled() {
+        return labelBackfillEnabled;
+    }
+
+    public void setLabelBackfillEnabled(boolean labelBackfillEnabled) {
+        this.labelBackfillEnabled = labelBackfillEnabled;
+    }
+
+    /**
+     * @return The time in seconds between label backfill passes
+     */
+    public long getLabelBackfillIntervalSeconds() {
+        return labelBackfillIntervalSeconds;
+    }
+
+    public void setLabelBackfillIntervalSeconds(long labelBackfillIntervalSeconds) {
+        this.labelBackfillIntervalSeconds = labelBackfillIntervalSeconds;
+    }
+
+    /**
+     * @return The maximum number of label patches issued per second
+     */
+    public int getLabelBackfillPatchesPerSecond() {
+        return labelBackfillPatchesPerSecond;
+    }
+
+    public void setLabelBackfillPatchesPerSecond(int labelBackfillPatchesPerSecond) {
+        this.labelBackfillPatchesPerSecond = labelBackfillPatchesPerSecond;
+    }
+
+    /**
+     * @return The maximum number of bindings labelled by each backfill pass
+     */
+    public int getLabelBackfillBatchSize() {
+        return labelBackfillBatchSize;
+    }
+
+    public void setLabelBackfillBatchSize(int labelBackfillBatchSize) {
+        this.labelBackfillBatchSize = labelBackfillBatchSize;
+    }
+
+    /**
+     * @return The maximum number of items requested in each page of a LIST, 0
+     * to request every item in a single response
+     */
+    public int getListPageSize() {
+        return listPageSize;
+    }
+
+    public void setListPageSize(int listPageSize) {
+        this.listPageSize = listPageSize;
+    }
+
+    /**
+     * @return The maximum number of idle connections kept in the pool
+     */
+    public int getConnectionPoolMaxIdle() {
+        return connectionPoolMaxIdle;
+    }
+
+    public void setConnectionPoolMaxIdle(int connectionPoolMaxIdle) {
+        this.connectionPoolMaxIdle = connectionPoolMaxIdle;
+    }
+
+    /**
+     * @return The time in seconds an idle pooled connection is kept alive
+     */
+    public long getConnectionKeepAliveSeconds() {
+        return connectionKeepAliveSeconds;
+    }
+
+    public void setConnectionKeepAliveSeconds(long connectionKeepAliveSeconds) {
+        this.connectionKeepAliveSeconds = connectionKeepAliveSeconds;
+    }
+
+    /**
+     * @return true if HTTP/2 may be negotiated with the API server, false to
+     * use HTTP/1.1 only
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * @return The connect timeout of calls to the API server in milliseconds
+     */
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return The read timeout of calls to the API server in milliseconds,
+     * watches are not subject to it
+     */
+    public long getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(long readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * @return true if connections should be opened and caches synced during
+     * startup
+     */
+    public boolean isPrewarmEnabled() {
+        return prewarmEnabled;
+    }
+
+    public void setPrewarmEnabled(boolean prewarmEnabled) {
+        this.prewarmEnabled = prewarmEnabled;
+    }
+
+    /**
+     * @return The longest time in seconds startup waits for caches to sync
+     * when pre-warming
+     */
+    public long getPrewarmTimeoutSeconds() {
+        return prewarmTimeoutSeconds;
+    }
+
+    public void setPrewarmTimeoutSeconds(long prewarmTimeoutSeconds) {
+        this.prewarmTimeoutSeconds = prewarmTimeoutSeconds;
+    }
+
+    /**
+     * @return The overall timeout of each call to the API server in milliseconds, 0
+     * for none
+     */
+    public long getCallTimeoutMillis() {
+        return callTimeoutMillis;
+    }
+
+    public void setCallTimeoutMillis(long callTimeoutMillis) {
+        this.callTimeoutMillis = callTimeoutMillis;
+    }
+
+    /**
+     * @return The deadline in milliseconds of looking up the workspaces of a user, 0
+     * for none
+     */
+    public long getLookupDeadlineMillis() {
+        return lookupDeadlineMillis;
+    }
+
+    public void setLookupDeadlineMillis(long lookupDeadlineMillis) {
+        this.lookupDeadlineMillis = lookupDeadlineMillis;
+    }
+
+    /**
+     * @return The deadline in milliseconds of activating a binding for a user, 0 for
+     * none
+     */
+    public long getActivationDeadlineMillis() {
+        return activationDeadlineMillis;
+    }
+
+    public void setActivationDeadlineMillis(long activationDeadlineMillis) {
+        this.activationDeadlineMillis = activationDeadlineMillis;
+    }
+
+    /**
+     * @return true if lookups and activations are made through a circuit breaker,
+     * with the last known workspaces of a user used while it is open
+     */
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+
+    /**
+     * @return The number of consecutive failures that opens the circuit breaker
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * @return The time in seconds the circuit breaker stays open before a trial
+     * call
+     */
+    public long getCircuitBreakerOpenSeconds() {
+        return circuitBreakerOpenSeconds;
+    }
+
+    public void setCircuitBreakerOpenSeconds(long circuitBreakerOpenSeconds) {
+        this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+    }
+
+    /**
+     * @return The maximum number of users whose last known workspaces are kept
+     */
+    public int getFallbackMaxEntries() {
+        return fallbackMaxEntries;
+    }
+
+    public void setFallbackMaxEntries(int fallbackMaxEntries) {
+        this.fallbackMaxEntries = fallbackMaxEntries;
+    }
+
+    /**
+     * @return The time in seconds the last known workspaces of a user are kept
+     */
+    public long getFallbackTtlSeconds() {
+        return fallbackTtlSeconds;
+    }
+
+    public void setFallbackTtlSeconds(long fallbackTtlSeconds) {
+        this.fallbackTtlSeconds = fallbackTtlSeconds;
+    }
+
+    /**
+     * @return true if the rendered workspace selection of each user is cached
+     */
+    public boolean isSelectionCacheEnabled() {
+        return selectionCacheEnabled;
+    }
+
+    public void setSelectionCacheEnabled(boolean selectionCacheEnabled) {
+        this.selectionCacheEnabled = selectionCacheEnabled;
+    }
+
+    /**
+     * @return The maximum number of users whose workspace selection is cached
+     */
+    public int getSelectionCacheMaxEntries() {
+        return selectionCacheMaxEntries;
+    }
+
+    public void setSelectionCacheMaxEntries(int selectionCacheMaxEntries) {
+        this.selectionCacheMaxEntries = selectionCacheMaxEntries;
+    }
+
+    /**
+     * @return The time in seconds a rendered workspace selection is cached
+     */
+    public long getSelectionCacheTtlSeconds() {
+        return selectionCacheTtlSeconds;
+    }
+
+    public void setSelectionCacheTtlSeconds(long selectionCacheTtlSeconds) {
+        this.selectionCacheTtlSeconds = selectionCacheTtlSeconds;
+    }
+
+    /**
+     * @return true if bindings whose owning session has expired are scaled down on
+     * a schedule
+     */
+    public boolean isReaperEnabled() {
+        return reaperEnabled;
+    }
+
+    public void setReaperEnabled(boolean reaperEnabled) {
+        this.reaperEnabled = reaperEnabled;
+    }
+
+    /**
+     * @return true if the reaper only reports the bindings it would scale down
+     */
+    public boolean isReaperDryRun() {
+        return reaperDryRun;
+    }
+
+    public void setReaperDryRun(boolean reaperDryRun) {
+        this.reaperDryRun = reaperDryRun;
+    }
+
+    /**
+     * @return The time in seconds between runs of the reaper
+     */
+    public long getReaperIntervalSeconds() {
+        return reaperIntervalSeconds;
+    }
+
+    public void setReaperIntervalSeconds(long reaperIntervalSeconds) {
+        this.reaperIntervalSeconds = reaperIntervalSeconds;
+    }
+
+    /**
+     * @return The time in seconds since the owning session was last refreshed
+     * after which a binding is idle
+     */
+    public long getReaperIdleSeconds() {
+        return reaperIdleSeconds;
+    }
+
+    public void setReaperIdleSeconds(long reaperIdleSeconds) {
+        this.reaperIdleSeconds = reaperIdleSeconds;
+    }
+
+    /**
+     * @return The maximum number of bindings scaled down by each run of the reaper
+     */
+    public int getReaperBatchSize() {
+        return reaperBatchSize;
+    }
+
+    public void setReaperBatchSize(int reaperBatchSize) {
+        this.reaperBatchSize = reaperBatchSize;
+    }
+
+    /**
+     * @return The maximum number of bindings the reaper scales down per second
+     */
+    public int getReaperPatchesPerSecond() {
+        return reaperPatchesPerSecond;
+    }
+
+    public void setReaperPatchesPerSecond(int reaperPatchesPerSecond) {
+        this.reaperPatchesPerSecond = reaperPatchesPerSecond;
+    }
+}
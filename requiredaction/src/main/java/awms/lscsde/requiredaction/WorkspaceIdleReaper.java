@@ -0,0 +1,233 @@
+/**
+ * Scales down the workspaces of users who are no longer signed in.
+ *
+ * <p>
+ * This class is scheduled by the {@link WorkspaceRequiredActionFactory} so
+ * that workspaces of users who do not return are not left running until the
+ * same user next logs in.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RequiredActionProviderModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+import org.keycloak.timer.ScheduledTask;
+
+/**
+ * A scheduled task which finds scaled up bindings whose owning session has
+ * expired and scales them to zero.
+ *
+ * The owning session of a binding is the session recorded in the
+ * {@link WorkspaceSelection} of the user named by the binding's
+ * spec.username. The user is only looked up in the realms where the
+ * workspace required action is enabled, and only once for each run however
+ * many of their bindings are running. A binding is idle when:
+ * <ul>
+ * <li>its owning session has not been refreshed within the idle threshold,
+ * or</li>
+ * <li>its owning session no longer exists and none of the user's other
+ * sessions have been refreshed within the idle threshold</li>
+ * </ul>
+ * Bindings whose user is not found, or has never selected a workspace, are
+ * left alone.
+ *
+ * Each run selects at most one batch of bindings and hands it to the
+ * reaper's own thread, which patches them one after another at the
+ * configured rate, so the rate limiting never holds up the Keycloak timer. A
+ * run is skipped while the previous batch is still being patched. In dry-run
+ * mode the bindings that would be reaped are logged and counted but not
+ * patched.
+ *
+ * The {@code awms.workspace.reaper.reaped} counter is published, tagged with
+ * the outcome: {@code scaled}, {@code failed} or {@code dry_run}.
+ */
+public class WorkspaceIdleReaper implements ScheduledTask {
+
+    public static final String TASK_NAME = "awms-workspace-idle-reaper";
+    private static final Logger LOG = Logger.getLogger(WorkspaceIdleReaper.class);
+
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceActivationState activationState;
+    protected long idleSeconds;
+    protected int batchSize;
+    protected long patchIntervalMillis;
+    protected boolean dryRun;
+    protected AtomicBoolean reaping = new AtomicBoolean(false);
+    protected ExecutorService patchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TASK_NAME);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param workspaceClient The client used to list and scale bindings
+     * @param activationState The cluster-wide activation state to clear for
+     * reaped users, or null if it is disabled
+     * @param config The configuration of the reaper
+     */
+    public WorkspaceIdleReaper(WorkspaceKubernetesClient workspaceClient, WorkspaceActivationState activationState, WorkspaceClientConfig config) {
+        this.workspaceClient = workspaceClient;
+        this.activationState = activationState;
+        this.idleSeconds = config.getReaperIdleSeconds();
+        this.batchSize = config.getReaperBatchSize();
+        this.patchIntervalMillis = 1000L / Math.max(1, config.getReaperPatchesPerSecond());
+        this.dryRun = config.isReaperDryRun();
+    }
+
+    /**
+     * Selects a batch of idle bindings and queues them to be scaled down on
+     * the reaper's own thread, returning without waiting for the patches.
+     *
+     * @param session The current Keycloak session
+     */
+    @Override
+    public void run(KeycloakSession session) {
+        if (reaping.get()) {
+            LOG.debug("Previous batch of idle Workspace Bindings still being scaled down, skipping");
+            return;
+        }
+        List<RealmModel> realms = session.realms().getRealmsStream()
+                .filter(WorkspaceIdleReaper::usesWorkspaceAction)
+                .collect(Collectors.toList());
+        if (realms.isEmpty()) {
+            return;
+        }
+        int idleBefore = Time.currentTime() - (int) idleSeconds;
+
+        Map<String, Boolean> idleUsers = new HashMap<String, Boolean>();
+        List<WorkspaceBindingSummary> idle = new ArrayList<WorkspaceBindingSummary>();
+        workspaceClient.forEachWorkspaceBinding(null, binding -> {
+            if (binding.getReplicas() != null && binding.getReplicas() > 0 && binding.getUsername() != null
+                    && idleUsers.computeIfAbsent(binding.getUsername(), username -> isIdle(session, realms, username, idleBefore))) {
+                idle.add(binding);
+            }
+            return idle.size() < batchSize;
+        });
+
+        if (idle.isEmpty()) {
+            return;
+        }
+        LOG.info(String.format("Found %d idle Workspace Binding(s) of %d user(s)%s", idle.size(), idleUsers.size(), dryRun ? ", dry run" : ""));
+
+        if (dryRun) {
+            for (WorkspaceBindingSummary binding : idle) {
+                LOG.info(String.format("Would scale down idle binding '%s' of user '%s'", binding.getName(), binding.getUsername()));
+                WorkspaceMetrics.increment(WorkspaceMetrics.REAPER_REAPED, WorkspaceMetrics.TAG_OUTCOME, "dry_run");
+            }
+            return;
+        }
+
+        if (!reaping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            patchExecutor.execute(() -> reapAll(idle));
+        } catch (RejectedExecutionException ex) {
+            reaping.set(false);
+            LOG.debug("Idle Workspace reaper stopped, skipping");
+        }
+    }
+
+    /**
+     * Stops any batch still being scaled down.
+     */
+    public void stop() {
+        patchExecutor.shutdownNow();
+    }
+
+    /**
+     * @param realm A realm
+     * @return true if the workspace required action is enabled in the realm
+     */
+    protected static boolean usesWorkspaceAction(RealmModel realm) {
+        RequiredActionProviderModel action = realm.getRequiredActionProviderByAlias(WorkspaceRequiredAction.PROVIDER_ID);
+        return action != null && action.isEnabled();
+    }
+
+    /**
+     * Scales down a batch of idle bindings one after another at the
+     * configured rate.
+     *
+     * @param idle The bindings to scale down
+     */
+    protected void reapAll(List<WorkspaceBindingSummary> idle) {
+        try {
+            for (WorkspaceBindingSummary binding : idle) {
+                reap(binding);
+                TimeUnit.MILLISECONDS.sleep(patchIntervalMillis);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            reaping.set(false);
+        }
+    }
+
+    /**
+     * Determines whether the owning session of a user's binding has expired.
+     *
+     * @param session The current Keycloak session
+     * @param realms The realms to look for the user in
+     * @param username The username from the binding
+     * @param idleBefore The time, in seconds since the epoch, before which a
+     * session refresh is considered idle
+     * @return true if the binding is idle
+     */
+    protected boolean isIdle(KeycloakSession session, List<RealmModel> realms, String username, int idleBefore) {
+        for (RealmModel realm : realms) {
+            UserModel user = session.users().getUserByUsername(realm, username);
+            WorkspaceSelection selection = user != null ? WorkspaceSelection.read(user) : null;
+            if (selection == null) {
+                continue;
+            }
+
+            UserSessionModel userSession = session.sessions().getUserSession(realm, selection.getAssignedSession());
+            if (userSession != null) {
+                return userSession.getLastSessionRefresh() < idleBefore;
+            }
+            return session.sessions().getUserSessionsStream(realm, user)
+                    .noneMatch(other -> other.getLastSessionRefresh() >= idleBefore);
+        }
+        return false;
+    }
+
+    /**
+     * Scales an idle binding to zero and clears the recorded activation of its
+     * user.
+     *
+     * @param binding The binding to scale down
+     */
+    protected void reap(WorkspaceBindingSummary binding) {
+        LOG.info(String.format("Scaling down idle binding '%s' of user '%s'", binding.getName(), binding.getUsername()));
+        try {
+            if (workspaceClient.patchWorkspaceBindingScale(binding.getNamespace(), binding.getName(), 0) == null) {
+                WorkspaceMetrics.increment(WorkspaceMetrics.REAPER_REAPED, WorkspaceMetrics.TAG_OUTCOME, "failed");
+                return;
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn(String.format("Unable to scale down idle binding '%s'", binding.getName()), ex);
+            WorkspaceMetrics.increment(WorkspaceMetrics.REAPER_REAPED, WorkspaceMetrics.TAG_OUTCOME, "failed");
+            return;
+        }
+
+        WorkspaceMetrics.increment(WorkspaceMetrics.REAPER_REAPED, WorkspaceMetrics.TAG_OUTCOME, "scaled");
+        if (activationState != null) {
+            activationState.clearActivation(binding.getUsername());
+        }
+    }
+}
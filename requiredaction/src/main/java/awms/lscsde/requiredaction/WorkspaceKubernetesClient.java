@@ -11,16 +11,32 @@
 package awms.lscsde.requiredaction;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import awms.lscsde.requiredaction.BoundWorkspace;
-import awms.lscsde.requiredaction.WorkspaceRequiredAction;
+import com.google.gson.JsonObject;
+import io.kubernetes.client.common.KubernetesListObject;
+import io.kubernetes.client.common.KubernetesObject;
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
-import io.kubernetes.client.openapi.Configuration;
 import io.kubernetes.client.util.ClientBuilder;
 import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspace;
 import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceList;
@@ -31,6 +47,8 @@ import io.kubernetes.client.util.generic.options.ListOptions;
 import org.jboss.logging.Logger;
 import io.kubernetes.client.util.generic.KubernetesApiResponse;
 import io.kubernetes.client.custom.V1Patch;
+import okhttp3.ConnectionPool;
+import okhttp3.Protocol;
 
 /**
  * The WorkspaceKubernetesClient class provides methods to interact with
@@ -73,12 +91,23 @@ public class WorkspaceKubernetesClient {
     protected static final String API_VERSION = "v1";
     protected static final String WORKSPACE_PLURAL = "analyticsworkspaces";
     protected static final String WORKSPACE_BINDING_PLURAL = "analyticsworkspacebindings";
-    protected static final String DEFAULT_NAMESPACE = "jh-test";
     private static final Logger LOG = Logger.getLogger(WorkspaceKubernetesClient.class);
 
     protected ApiClient apiClient;
     protected GenericKubernetesApi<V1AnalyticsWorkspace, V1AnalyticsWorkspaceList> workspaceApi;
     protected GenericKubernetesApi<V1AnalyticsWorkspaceBinding, V1AnalyticsWorkspaceBindingList> workspaceBindingApi;
+    protected GenericKubernetesApi<WorkspaceBindingSummary, WorkspaceBindingSummaryList> workspaceBindingSummaryApi;
+    protected WorkspaceClientConfig config;
+    protected WorkspaceBindingCache bindingCache;
+    protected WorkspaceCache workspaceCache;
+    protected ExecutorService patchExecutor;
+    protected Semaphore globalPatchPermits;
+    protected WorkspaceReadinessWaiter readinessWaiter;
+    protected WorkspaceLabelBackfill labelBackfill;
+    protected volatile boolean unlabelledBindingsCleared = false;
+    protected WorkspaceCircuitBreaker circuitBreaker;
+    protected ExpiringCache<String, List<BoundWorkspace>> workspaceFallback;
+    protected ExecutorService deadlineExecutor;
 
     /**
      * The WorkspaceKubernetesClient provides functionality to interact with
@@ -93,10 +122,473 @@ public class WorkspaceKubernetesClient {
      * Kubernetes cluster
      */
     public WorkspaceKubernetesClient() throws IOException {
-        apiClient = ClientBuilder.cluster().build();
-        Configuration.setDefaultApiClient(apiClient);
+        this(new WorkspaceClientConfig());
+    }
+
+    /**
+     * Creates a client using the supplied configuration, connecting to the
+     * cluster with the in-cluster configuration and the configured connection
+     * pool, protocols and timeouts.
+     *
+     * @param config The configuration of the client
+     * @throws IOException If there is an error establishing connection with the
+     * Kubernetes cluster
+     */
+    public WorkspaceKubernetesClient(WorkspaceClientConfig config) throws IOException {
+        this(config, createApiClient(config));
+    }
+
+    /**
+     * Creates a client using the supplied configuration and API client. The
+     * global default API client is left untouched. The
+     * {@link WorkspaceApiMetricsInterceptor} is added to the HTTP client of the
+     * supplied API client.
+     *
+     * When the binding or workspace caches are enabled, shared informers are
+     * started which watch the resources using a copy of the API client without
+     * a read timeout, so that the long lived watches are not interrupted.
+     *
+     * @param config The configuration of the client
+     * @param apiClient The API client used for all calls to the Kubernetes API
+     * server
+     */
+    public WorkspaceKubernetesClient(WorkspaceClientConfig config, ApiClient apiClient) {
+        this.config = config;
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(new WorkspaceApiMetricsInterceptor()).build());
+        this.apiClient = apiClient;
         workspaceApi = new GenericKubernetesApi<>(V1AnalyticsWorkspace.class, V1AnalyticsWorkspaceList.class, API_GROUP, API_VERSION, WORKSPACE_PLURAL, apiClient);
         workspaceBindingApi = new GenericKubernetesApi<>(V1AnalyticsWorkspaceBinding.class, V1AnalyticsWorkspaceBindingList.class, API_GROUP, API_VERSION, WORKSPACE_BINDING_PLURAL, apiClient);
+        workspaceBindingSummaryApi = new GenericKubernetesApi<>(WorkspaceBindingSummary.class, WorkspaceBindingSummaryList.class, API_GROUP, API_VERSION, WORKSPACE_BINDING_PLURAL, apiClient);
+
+        if (config.isBindingCacheEnabled()) {
+            ApiClient watchApiClient = createWatchApiClient();
+            GenericKubernetesApi<V1AnalyticsWorkspaceBinding, V1AnalyticsWorkspaceBindingList> watchBindingApi = new GenericKubernetesApi<>(V1AnalyticsWorkspaceBinding.class, V1AnalyticsWorkspaceBindingList.class, API_GROUP, API_VERSION, WORKSPACE_BINDING_PLURAL, watchApiClient);
+            bindingCache = new WorkspaceBindingCache(watchApiClient, createListerWatchers(watchBindingApi, config.getBindingLabelSelector()), config.getBindingCacheResyncSeconds(), config.getUsernameLabel());
+            bindingCache.start();
+        }
+
+        if (config.isWorkspaceCacheEnabled()) {
+            ApiClient watchApiClient = createWatchApiClient();
+            GenericKubernetesApi<V1AnalyticsWorkspace, V1AnalyticsWorkspaceList> watchWorkspaceApi = new GenericKubernetesApi<>(V1AnalyticsWorkspace.class, V1AnalyticsWorkspaceList.class, API_GROUP, API_VERSION, WORKSPACE_PLURAL, watchApiClient);
+            workspaceCache = new WorkspaceCache(watchApiClient, createListerWatchers(watchWorkspaceApi, config.getWorkspaceLabelSelector()), config.getWorkspaceCacheResyncSeconds());
+            workspaceCache.start();
+        }
+
+        if (config.isParallelPatchEnabled()) {
+            patchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            globalPatchPermits = new Semaphore(config.getPatchConcurrencyGlobal());
+        }
+
+        if (config.getReadinessTimeoutSeconds() > 0) {
+            readinessWaiter = new WorkspaceReadinessWaiter(createWatchApiClient());
+        }
+
+        if (config.isCircuitBreakerEnabled()) {
+            circuitBreaker = new WorkspaceCircuitBreaker(config.getCircuitBreakerFailureThreshold(), config.getCircuitBreakerOpenSeconds());
+            workspaceFallback = new ExpiringCache<String, List<BoundWorkspace>>(config.getFallbackMaxEntries(), config.getFallbackTtlSeconds(), TimeUnit.SECONDS);
+        }
+        if (config.getLookupDeadlineMillis() > 0 || config.getActivationDeadlineMillis() > 0) {
+            deadlineExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        }
+
+        if (config.isLabelBackfillEnabled()) {
+            labelBackfill = new WorkspaceLabelBackfill(this, config);
+            labelBackfill.start();
+        }
+    }
+
+    /**
+     * Creates the API client used to connect to the cluster, using the
+     * in-cluster configuration with the connection pool, protocols and
+     * timeouts of the supplied configuration applied.
+     *
+     * @param config The configuration of the client
+     * @return The API client
+     * @throws IOException If there is an error establishing connection with the
+     * Kubernetes cluster
+     */
+    protected static ApiClient createApiClient(WorkspaceClientConfig config) throws IOException {
+        ApiClient apiClient = ClientBuilder.cluster().build();
+        List<Protocol> protocols = config.isHttp2Enabled()
+                ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                : Arrays.asList(Protocol.HTTP_1_1);
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder()
+                .connectionPool(new ConnectionPool(config.getConnectionPoolMaxIdle(), config.getConnectionKeepAliveSeconds(), TimeUnit.SECONDS))
+                .protocols(protocols)
+                .connectTimeout(config.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(config.getReadTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .callTimeout(config.getCallTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .build());
+        return apiClient;
+    }
+
+    /**
+     * Creates an API client for use by informers and watches. Watches are long
+     * lived, so the client has no read or call timeout. It is derived from the main
+     * API client, so it shares its connection pool, authentication and TLS
+     * configuration.
+     *
+     * @return The API client
+     */
+    protected ApiClient createWatchApiClient() {
+        ApiClient watchApiClient = new ApiClient(apiClient.getHttpClient().newBuilder().readTimeout(0, TimeUnit.SECONDS).callTimeout(0, TimeUnit.SECONDS).build());
+        watchApiClient.setBasePath(apiClient.getBasePath());
+        return watchApiClient;
+    }
+
+    /**
+     * Opens connections to the API server and waits for any enabled caches to
+     * complete their initial sync, so that the first logins do not pay for
+     * the TLS handshake or the initial LISTs.
+     *
+     * A single item LIST of bindings and of workspaces is issued in each
+     * configured namespace, or across all namespaces if none are configured.
+     *
+     * @param timeout The longest time to wait for the caches to sync
+     * @return true if every enabled cache synced within the timeout
+     */
+    public boolean prewarm(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        ListOptions listOptions = new ListOptions();
+        listOptions.setLimit(1);
+        List<String> namespaces = config.getNamespaces().isEmpty() ? Arrays.asList((String) null) : config.getNamespaces();
+        for (String namespace : namespaces) {
+            KubernetesApiResponse<WorkspaceBindingSummaryList> bindings = namespace == null
+                    ? workspaceBindingSummaryApi.list(listOptions)
+                    : workspaceBindingSummaryApi.list(namespace, listOptions);
+            KubernetesApiResponse<V1AnalyticsWorkspaceList> workspaces = namespace == null
+                    ? workspaceApi.list(listOptions)
+                    : workspaceApi.list(namespace, listOptions);
+            LOG.info(String.format("Pre-warmed namespace '%s', bindings: %s, workspaces: %s", namespace, bindings.getHttpStatusCode(), workspaces.getHttpStatusCode()));
+        }
+
+        try {
+            while (!cachesSynced()) {
+                if (System.nanoTime() > deadline) {
+                    LOG.warn(String.format("Caches did not sync within %s", timeout));
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if every enabled cache has completed its initial sync
+     */
+    protected boolean cachesSynced() {
+        return (bindingCache == null || bindingCache.hasSynced())
+                && (workspaceCache == null || workspaceCache.hasSynced());
+    }
+
+    /**
+     * Creates the LIST and WATCH calls for an informer, one for each
+     * configured namespace, or a single cluster wide one if no namespaces are
+     * configured.
+     *
+     * @param api The API used to access the resource
+     * @param labelSelector The label selector to apply, or null for none
+     * @return The lister-watchers
+     */
+    protected <ApiType extends KubernetesObject, ApiListType extends KubernetesListObject> List<WorkspaceListerWatcher<ApiType, ApiListType>> createListerWatchers(GenericKubernetesApi<ApiType, ApiListType> api, String labelSelector) {
+        List<WorkspaceListerWatcher<ApiType, ApiListType>> listerWatchers = new ArrayList<WorkspaceListerWatcher<ApiType, ApiListType>>();
+        if (config.getNamespaces().isEmpty()) {
+            listerWatchers.add(new WorkspaceListerWatcher<>(api, null, labelSelector));
+        } else {
+            for (String namespace : config.getNamespaces()) {
+                listerWatchers.add(new WorkspaceListerWatcher<>(api, namespace, labelSelector));
+            }
+        }
+        return listerWatchers;
+    }
+
+    /**
+     * Runs a LIST in each configured namespace and combines the results. When
+     * several namespaces are configured the LISTs are issued concurrently on
+     * virtual threads. When no namespaces are configured a single cluster wide
+     * LIST is issued.
+     *
+     * @param lister Lists the items in a namespace, or across all namespaces
+     * when given null
+     * @return The combined items
+     */
+    protected <T> List<T> listInNamespaces(Function<String, List<T>> lister) {
+        List<String> namespaces = config.getNamespaces();
+        if (namespaces.isEmpty()) {
+            return lister.apply(null);
+        }
+        if (namespaces.size() == 1) {
+            return lister.apply(namespaces.get(0));
+        }
+
+        List<T> items = new ArrayList<T>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>();
+            for (String namespace : namespaces) {
+                futures.add(executor.submit(() -> lister.apply(namespace)));
+            }
+            for (Future<List<T>> future : futures) {
+                items.addAll(future.get());
+            }
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Unable to list namespace", ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing namespaces", ex);
+        }
+        return items;
+    }
+
+    /**
+     * Lists a resource one page at a time using the limit and continue
+     * parameters, passing each item to a visitor as its page arrives. Only a
+     * single page is held at a time, so the memory used does not grow with the
+     * number of items in the cluster.
+     *
+     * @param api The API used to access the resource
+     * @param namespace The namespace to list, or null for all namespaces
+     * @param labelSelector The label selector to apply, or null for none
+     * @param visitor Called for each item, returning false to stop listing
+     * @return false if the visitor stopped the listing early, otherwise true
+     * @throws WorkspaceListException If any page is not returned, so that a
+     * partial listing is never reported as complete
+     */
+    protected <ApiType extends KubernetesObject, ApiListType extends KubernetesListObject> boolean forEachPage(GenericKubernetesApi<ApiType, ApiListType> api, String namespace, String labelSelector, Predicate<ApiType> visitor) {
+        ListOptions listOptions = new ListOptions();
+        listOptions.setLabelSelector(labelSelector);
+        if (config.getListPageSize() > 0) {
+            listOptions.setLimit(config.getListPageSize());
+        }
+
+        String continueToken = null;
+        int page = 0;
+        do {
+            listOptions.setContinue(continueToken);
+            page++;
+            KubernetesApiResponse<ApiListType> response = namespace == null
+                    ? api.list(listOptions)
+                    : api.list(namespace, listOptions);
+            if (!response.isSuccess() || response.getObject() == null) {
+                int code = response.getHttpStatusCode();
+                throw new WorkspaceListException(String.format("Unable to list page %d in namespace '%s', HTTP %d: %s", page, namespace, code, response.getStatus()), code);
+            }
+
+            for (Object item : response.getObject().getItems()) {
+                @SuppressWarnings("unchecked")
+                ApiType typedItem = (ApiType) item;
+                if (!visitor.test(typedItem)) {
+                    return false;
+                }
+            }
+
+            continueToken = response.getObject().getMetadata() != null ? response.getObject().getMetadata().getContinue() : null;
+        } while (continueToken != null && !continueToken.isEmpty());
+        return true;
+    }
+
+    /**
+     * Lists workspace bindings matching a label selector, combined with the
+     * configured binding label selector, in the configured namespaces. Items
+     * are filtered as each page arrives, so only the matching bindings are
+     * retained.
+     *
+     * @param api The API to list with, either the full bindings or their
+     * summaries
+     * @param labelSelector The label selector to apply
+     * @param filter Selects the bindings to return
+     * @return The matching workspace bindings
+     */
+    protected <ApiType extends KubernetesObject, ApiListType extends KubernetesListObject> List<ApiType> listWorkspaceBindings(GenericKubernetesApi<ApiType, ApiListType> api, String labelSelector, Predicate<ApiType> filter) {
+        String selector = combineSelectors(labelSelector, config.getBindingLabelSelector());
+        return listInNamespaces(namespace -> {
+            List<ApiType> bindings = new ArrayList<ApiType>();
+            forEachPage(api, namespace, selector, binding -> {
+                if (filter.test(binding)) {
+                    bindings.add(binding);
+                }
+                return true;
+            });
+            return bindings;
+        });
+    }
+
+    /**
+     * Passes a summary of each workspace binding matching a label selector,
+     * combined with the configured binding label selector, to a visitor as it
+     * is listed. The
+     * configured namespaces are listed one after another, and listing stops as
+     * soon as the visitor returns false.
+     *
+     * @param labelSelector The label selector to apply
+     * @param visitor Called for each binding, returning false to stop listing
+     * @return false if the visitor stopped the listing early, otherwise true
+     */
+    public boolean forEachWorkspaceBinding(String labelSelector, Predicate<WorkspaceBindingSummary> visitor) {
+        String selector = combineSelectors(labelSelector, config.getBindingLabelSelector());
+        List<String> namespaces = config.getNamespaces().isEmpty() ? Arrays.asList((String) null) : config.getNamespaces();
+        for (String namespace : namespaces) {
+            if (!forEachPage(workspaceBindingSummaryApi, namespace, selector, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes a call bounded by a deadline and, when it is enabled, through the
+     * circuit breaker. The call, including any fallback, is timed against the
+     * {@code awms.workspace.client.operation} timer.
+     *
+     * @param operation The name of the operation, used in logs and metrics
+     * @param deadlineMillis The deadline of the call in milliseconds, 0 for
+     * none
+     * @param call The call to make
+     * @param fallback Supplies the value to use if the call fails or the
+     * breaker is open, or null if there is none
+     * @return The result of the call, or of the fallback
+     */
+    protected <T> T guard(String operation, long deadlineMillis, Supplier<T> call, Supplier<T> fallback) {
+        return guard(operation, deadlineMillis, call, fallback, result -> false);
+    }
+
+    /**
+     * Makes a guarded call, as described by
+     * {@link #guard(String, long, Supplier, Supplier)}, whose result may
+     * report a failure that counts towards opening the circuit breaker.
+     *
+     * @param operation The name of the operation, used in logs and metrics
+     * @param deadlineMillis The deadline of the call in milliseconds, 0 for
+     * none
+     * @param call The call to make
+     * @param fallback Supplies the value to use if the call fails or the
+     * breaker is open, or null if there is none
+     * @param failed Determines whether a result of the call reports a failure
+     * @return The result of the call, or of the fallback
+     */
+    protected <T> T guard(String operation, long deadlineMillis, Supplier<T> call, Supplier<T> fallback, Predicate<T> failed) {
+        Supplier<T> bounded = deadlineMillis > 0 ? () -> withDeadline(operation, deadlineMillis, call) : call;
+        Supplier<T> protectedCall = circuitBreaker == null ? bounded : () -> circuitBreaker.execute(operation, bounded, fallback, failed);
+        return WorkspaceMetrics.time(WorkspaceMetrics.CLIENT_OPERATION, protectedCall, WorkspaceMetrics.TAG_OPERATION, operation);
+    }
+
+    /**
+     * Runs a call on a virtual thread and waits for it for no longer than its
+     * deadline, so that the calling thread is released even if the API server
+     * does not respond. A call exceeding its deadline is cancelled.
+     *
+     * @param operation The name of the operation, used in logs and metrics
+     * @param deadlineMillis The deadline of the call in milliseconds
+     * @param call The call to make
+     * @return The result of the call
+     * @throws IllegalStateException If the deadline is exceeded or the wait
+     * is interrupted
+     */
+    protected <T> T withDeadline(String operation, long deadlineMillis, Supplier<T> call) {
+        Future<T> future = deadlineExecutor.submit(call::get);
+        try {
+            return future.get(deadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            WorkspaceMetrics.increment(WorkspaceMetrics.OPERATION_TIMEOUTS, WorkspaceMetrics.TAG_OPERATION, operation);
+            throw new IllegalStateException(String.format("Operation '%s' exceeded its deadline of %dms", operation, deadlineMillis), ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(String.format("Operation '%s' failed", operation), ex.getCause());
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while waiting for operation '%s'", operation), ex);
+        }
+    }
+
+    /**
+     * Combines label selectors, ignoring any that are null or blank.
+     *
+     * @param selectors The selectors to combine
+     * @return The combined selector, or null if there are none
+     */
+    protected static String combineSelectors(String... selectors) {
+        String combined = Arrays.stream(selectors)
+                .filter(selector -> selector != null && !selector.isBlank())
+                .collect(Collectors.joining(","));
+        return combined.isEmpty() ? null : combined;
+    }
+
+    /**
+     * Registers a listener called with every workspace binding that changes
+     * in the cluster.
+     *
+     * @param listener The listener to call
+     * @return true if the listener was registered, false if the binding cache
+     * is disabled and changes are not observed
+     */
+    public boolean addBindingChangeListener(Consumer<V1AnalyticsWorkspaceBinding> listener) {
+        if (bindingCache == null) {
+            return false;
+        }
+        bindingCache.addChangeListener(listener);
+        return true;
+    }
+
+    /**
+     * Registers a listener called with every workspace that changes in the
+     * cluster.
+     *
+     * @param listener The listener to call
+     * @return true if the listener was registered, false if the workspace
+     * cache is disabled and changes are not observed
+     */
+    public boolean addWorkspaceChangeListener(Consumer<V1AnalyticsWorkspace> listener) {
+        if (workspaceCache == null) {
+            return false;
+        }
+        workspaceCache.addChangeListener(listener);
+        return true;
+    }
+
+    /**
+     * Stops any informers and executors started by this client and releases
+     * its pooled connections.
+     */
+    public void close() {
+        if (labelBackfill != null) {
+            labelBackfill.stop();
+        }
+        if (patchExecutor != null) {
+            patchExecutor.shutdownNow();
+        }
+        if (deadlineExecutor != null) {
+            deadlineExecutor.shutdownNow();
+        }
+        if (bindingCache != null) {
+            bindingCache.stop();
+        }
+        if (workspaceCache != null) {
+            workspaceCache.stop();
+        }
+        if (readinessWaiter != null) {
+            readinessWaiter.close();
+        }
+        apiClient.getHttpClient().dispatcher().executorService().shutdown();
+        apiClient.getHttpClient().connectionPool().evictAll();
+    }
+
+    /**
+     * Converts a username into a valid Kubernetes label value by replacing
+     * runs of characters other than lower case alphanumerics and dots with
+     * triple underscores.
+     *
+     * @param username The username to convert
+     * @return The username in the form used by the username label
+     */
+    public static String usernameToLabel(String username) {
+        return username.replaceAll("[^0-9a-z.]+", "___");
     }
 
     /**
@@ -106,37 +598,49 @@ public class WorkspaceKubernetesClient {
      * The method converts the username to a valid Kubernetes label format by
      * replacing non-alphanumeric characters (except dots) with triple
      * underscores. It then queries the Kubernetes API for workspace bindings
-     * that have the specified username label.
+     * that have the specified username label, within the configured
+     * namespaces.
      *
      * @param username The username for which to fetch workspace bindings
      * @return A list of analytics workspace bindings associated with the
      * specified user
      */
     public V1AnalyticsWorkspaceBindingList getWorkspaceBindingsForUserWithUserLabel(String username) {
-        String usernameAsLabel = username.replaceAll("[^0-9a-z.]+", "___");
-        LOG.info(String.format("Fetching Workspace Bindings With username label '%s'", usernameAsLabel));
-        ListOptions listOptions = new ListOptions();
-        listOptions.setLabelSelector(String.format("xlscsde.nhs.uk/username=%s", usernameAsLabel));
-        KubernetesApiResponse<V1AnalyticsWorkspaceBindingList> response = workspaceBindingApi.list(listOptions);
-        return response.getObject();
+        String usernameAsLabel = usernameToLabel(username);
+        LOG.debugf("Fetching Workspace Bindings With username label '%s'", usernameAsLabel);
+        V1AnalyticsWorkspaceBindingList bindings = new V1AnalyticsWorkspaceBindingList();
+        bindings.setItems(listWorkspaceBindings(workspaceBindingApi, String.format("%s=%s", config.getUsernameLabel(), usernameAsLabel), binding -> true));
+        return bindings;
     }
 
     /**
      * Retrieves a list of workspace bindings that do not have a username label.
      *
      * This method queries the Kubernetes API for Analytics Workspace Bindings
-     * that are missing the 'xlscsde.nhs.uk/username' label. The selection is
-     * done using a negation selector in the label query.
+     * that are missing the username label, by default
+     * 'xlscsde.nhs.uk/username', within the configured namespaces. The
+     * selection is done using a negation selector in the label query.
+     *
+     * Every unlabelled binding is held in the returned list, callers only
+     * interested in some of them should use
+     * {@link #forEachWorkspaceBinding(String, Predicate)} with
+     * {@link #unlabelledSelector()} instead.
      *
      * @return V1AnalyticsWorkspaceBindingList containing workspace bindings
      * without the username label
      */
     public V1AnalyticsWorkspaceBindingList getWorkspaceBindingsWithoutUserLabel() {
-        ListOptions listOptions = new ListOptions();
-        LOG.info("Fetching Workspace Bindings Without username label");
-        listOptions.setLabelSelector("!xlscsde.nhs.uk/username");
-        KubernetesApiResponse<V1AnalyticsWorkspaceBindingList> response = workspaceBindingApi.list(listOptions);
-        return response.getObject();
+        LOG.debug("Fetching Workspace Bindings Without username label");
+        V1AnalyticsWorkspaceBindingList bindings = new V1AnalyticsWorkspaceBindingList();
+        bindings.setItems(listWorkspaceBindings(workspaceBindingApi, unlabelledSelector(), binding -> true));
+        return bindings;
+    }
+
+    /**
+     * @return The label selector matching bindings without the username label
+     */
+    public String unlabelledSelector() {
+        return String.format("!%s", config.getUsernameLabel());
     }
 
     /**
@@ -150,27 +654,151 @@ public class WorkspaceKubernetesClient {
      * The resulting list contains distinct workspace bindings to avoid
      * duplicates.
      *
+     * When the binding cache is enabled and has completed its initial sync,
+     * both sources are answered from the in-memory index instead of the
+     * Kubernetes API server. Until then the live LIST calls are used. Once the
+     * label backfill reports that no unlabelled bindings remain, the scan of
+     * unlabelled bindings is skipped and only the label selector is used,
+     * unless it finds no bindings for the user, in case a binding has been
+     * created without the label since the last backfill pass.
+     *
      * @param username The username to fetch workspace bindings for
      * @return A list of unique V1AnalyticsWorkspaceBinding objects associated
      * with the user
      */
     public List<V1AnalyticsWorkspaceBinding> getAllWorkspaceBindingsForUser(String username) {
-        LOG.info(String.format("Fetching All Workspace Bindings for '%s'", username));
+        return WorkspaceMetrics.time(WorkspaceMetrics.CLIENT_OPERATION, () -> lookupWorkspaceBindingsForUser(username),
+                WorkspaceMetrics.TAG_OPERATION, "bindings");
+    }
+
+    /**
+     * Looks up the workspace bindings of a user from the cache or the API
+     * server, as described by {@link #getAllWorkspaceBindingsForUser(String)}.
+     *
+     * @param username The username to fetch workspace bindings for
+     * @return The unique bindings associated with the user
+     */
+    protected List<V1AnalyticsWorkspaceBinding> lookupWorkspaceBindingsForUser(String username) {
+        if (bindingCache != null && bindingCache.hasSynced()) {
+            LOG.debugf("Fetching All Workspace Bindings for '%s' from cache", username);
+            return bindingCache.getBindingsForUser(username, usernameToLabel(username)).stream().distinct().collect(Collectors.toList());
+        }
+
+        LOG.debugf("Fetching All Workspace Bindings for '%s'", username);
         List<V1AnalyticsWorkspaceBinding> bindings = new ArrayList<V1AnalyticsWorkspaceBinding>();
 
         for (V1AnalyticsWorkspaceBinding binding : getWorkspaceBindingsForUserWithUserLabel(username).getItems()) {
             bindings.add(binding);
         }
 
-        for (V1AnalyticsWorkspaceBinding binding : getWorkspaceBindingsWithoutUserLabel().getItems()) {
-            if (binding.getSpec().getUsername() == username) {
-                bindings.add(binding);
-            }
+        if (!unlabelledBindingsCleared || bindings.isEmpty()) {
+            bindings.addAll(listWorkspaceBindings(workspaceBindingApi, unlabelledSelector(), binding -> isOwnedBy(binding, username)));
         }
 
         return bindings.stream().distinct().collect(Collectors.toList());
     }
 
+    /**
+     * Retrieves summaries of all workspace bindings associated with a specific
+     * user, from the same sources as
+     * {@link #getAllWorkspaceBindingsForUser(String)}.
+     *
+     * Only the metadata and the spec fields used to discover and scale
+     * bindings are read from the LIST responses. This is used when bindings
+     * are only being scaled, the full bindings are only needed when they are
+     * rendered.
+     *
+     * @param username The username to fetch workspace bindings for
+     * @return The unique bindings associated with the user
+     */
+    public List<WorkspaceBindingSummary> getAllWorkspaceBindingSummariesForUser(String username) {
+        return WorkspaceMetrics.time(WorkspaceMetrics.CLIENT_OPERATION, () -> lookupWorkspaceBindingSummariesForUser(username),
+                WorkspaceMetrics.TAG_OPERATION, "binding_summaries");
+    }
+
+    /**
+     * Looks up summaries of the workspace bindings of a user, as described by
+     * {@link #getAllWorkspaceBindingSummariesForUser(String)}.
+     *
+     * @param username The username to fetch workspace bindings for
+     * @return The unique bindings associated with the user
+     */
+    protected List<WorkspaceBindingSummary> lookupWorkspaceBindingSummariesForUser(String username) {
+        if (bindingCache != null && bindingCache.hasSynced()) {
+            LOG.debugf("Fetching All Workspace Binding summaries for '%s' from cache", username);
+            return getAllWorkspaceBindingsForUser(username).stream().map(WorkspaceBindingSummary::from).collect(Collectors.toList());
+        }
+
+        LOG.debugf("Fetching All Workspace Binding summaries for '%s'", username);
+        List<WorkspaceBindingSummary> found = new ArrayList<WorkspaceBindingSummary>();
+        found.addAll(listWorkspaceBindings(workspaceBindingSummaryApi, String.format("%s=%s", config.getUsernameLabel(), usernameToLabel(username)), binding -> true));
+        if (!unlabelledBindingsCleared || found.isEmpty()) {
+            found.addAll(listWorkspaceBindings(workspaceBindingSummaryApi, unlabelledSelector(), binding -> isOwnedBy(binding, username)));
+        }
+
+        Map<String, WorkspaceBindingSummary> bindings = new LinkedHashMap<String, WorkspaceBindingSummary>();
+        for (WorkspaceBindingSummary binding : found) {
+            bindings.putIfAbsent(String.format("%s/%s", binding.getNamespace(), binding.getName()), binding);
+        }
+        return new ArrayList<WorkspaceBindingSummary>(bindings.values());
+    }
+
+    /**
+     * Finds a single workspace binding belonging to a user. The labelled
+     * bindings are checked first, then if the binding is not among them the
+     * unlabelled bindings are listed page by page, stopping as soon as the
+     * binding is found. The unlabelled bindings are listed even once the label
+     * backfill reports that none remain, in case a binding has been created
+     * without the label since the last backfill pass.
+     *
+     * @param workspaceBindingName The name of the workspace binding
+     * @param username The username the binding belongs to
+     * @return A summary of the workspace binding, or null if the user has no
+     * such binding
+     */
+    public WorkspaceBindingSummary findWorkspaceBindingForUser(String workspaceBindingName, String username) {
+        if (bindingCache != null && bindingCache.hasSynced()) {
+            return bindingCache.getBindingsForUser(username, usernameToLabel(username)).stream()
+                    .filter(binding -> workspaceBindingName.equals(binding.getMetadata().getName()))
+                    .map(WorkspaceBindingSummary::from)
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        WorkspaceBindingSummary[] found = new WorkspaceBindingSummary[1];
+        Predicate<WorkspaceBindingSummary> visitor = binding -> {
+            if (workspaceBindingName.equals(binding.getName())) {
+                found[0] = binding;
+                return false;
+            }
+            return true;
+        };
+
+        String labelSelector = String.format("%s=%s", config.getUsernameLabel(), usernameToLabel(username));
+        if (forEachWorkspaceBinding(labelSelector, visitor)) {
+            forEachWorkspaceBinding(unlabelledSelector(), binding -> !isOwnedBy(binding, username) || visitor.test(binding));
+        }
+        return found[0];
+    }
+
+    /**
+     * @param binding The workspace binding
+     * @param username The username to check
+     * @return true if spec.username of the binding is the given username
+     */
+    protected static boolean isOwnedBy(V1AnalyticsWorkspaceBinding binding, String username) {
+        return binding.getSpec() != null && username.equals(binding.getSpec().getUsername());
+    }
+
+    /**
+     * @param binding The workspace binding summary
+     * @param username The username to check
+     * @return true if spec.username of the binding is the given username
+     */
+    protected static boolean isOwnedBy(WorkspaceBindingSummary binding, String username) {
+        return username.equals(binding.getUsername());
+    }
+
     /**
      * Retrieves all workspaces bound to a specific user.
      *
@@ -179,25 +807,92 @@ public class WorkspaceKubernetesClient {
      * multiple bindings exist for the same workspace, only the first one is
      * considered.
      *
+     * Workspaces are served from the workspace cache when it is enabled and
+     * synced. Any workspace that cannot be found there is resolved with a
+     * single LIST of the binding's namespace, which is shared by all other
+     * bindings in the same namespace, rather than a GET per workspace.
+     *
+     * The lookup is bounded by the configured lookup deadline and made
+     * through the circuit breaker when it is enabled. Each successful result
+     * is kept, so that if the lookup fails or the breaker is open the last
+     * known workspaces of the user are returned instead.
+     *
      * @param username The username for which to fetch bound workspaces
      * @return A list of BoundWorkspace objects representing the workspaces
      * bound to the user
      */
     public List<BoundWorkspace> getAllWorkspacesForUser(String username) {
-        LOG.info(String.format("Fetching All Workspaces for '%s'", username));
+        return guard("workspaces", config.getLookupDeadlineMillis(), () -> {
+            List<BoundWorkspace> workspaces = lookupWorkspacesForUser(username);
+            if (workspaceFallback != null) {
+                workspaceFallback.put(username, workspaces);
+            }
+            return workspaces;
+        }, () -> workspaceFallback != null ? workspaceFallback.get(username) : null);
+    }
+
+    /**
+     * Looks up the workspaces bound to a user from the caches or the API
+     * server, as described by {@link #getAllWorkspacesForUser(String)}.
+     *
+     * @param username The username for which to fetch bound workspaces
+     * @return The workspaces bound to the user
+     */
+    protected List<BoundWorkspace> lookupWorkspacesForUser(String username) {
+        LOG.debugf("Fetching All Workspaces for '%s'", username);
         HashMap<String, BoundWorkspace> workspaces = new HashMap<String, BoundWorkspace>();
+        HashMap<String, Map<String, V1AnalyticsWorkspace>> listedNamespaces = new HashMap<String, Map<String, V1AnalyticsWorkspace>>();
         List<V1AnalyticsWorkspaceBinding> bindings = getAllWorkspaceBindingsForUser(username);
         for (V1AnalyticsWorkspaceBinding binding : bindings) {
             String workspaceName = binding.getSpec().getWorkspace();
             if (!workspaces.containsKey(workspaceName)) {
-                LOG.info(String.format("Found Workspace '%s' for '%s'", workspaceName, username));
-                V1AnalyticsWorkspace workspace = workspaceApi.get(binding.getMetadata().getNamespace(), workspaceName).getObject();
+                LOG.debugf("Found Workspace '%s' for '%s'", workspaceName, username);
+                V1AnalyticsWorkspace workspace = findWorkspace(binding.getMetadata().getNamespace(), workspaceName, listedNamespaces);
                 workspaces.put(workspaceName, new BoundWorkspace(workspace, binding));
             }
         }
         return workspaces.values().stream().collect(Collectors.toList());
     }
 
+    /**
+     * Resolves a workspace from the workspace cache, falling back to a LIST
+     * of its namespace when the cache is disabled, not yet synced or does not
+     * hold the workspace.
+     *
+     * @param namespace The namespace of the workspace
+     * @param workspaceName The name of the workspace
+     * @param listedNamespaces The namespaces already listed during the current
+     * lookup, populated by this method
+     * @return The workspace, or null if it does not exist
+     */
+    protected V1AnalyticsWorkspace findWorkspace(String namespace, String workspaceName, Map<String, Map<String, V1AnalyticsWorkspace>> listedNamespaces) {
+        if (workspaceCache != null && workspaceCache.hasSynced()) {
+            V1AnalyticsWorkspace workspace = workspaceCache.get(namespace, workspaceName);
+            if (workspace != null) {
+                return workspace;
+            }
+        }
+
+        return listedNamespaces.computeIfAbsent(namespace, this::getWorkspacesInNamespace).get(workspaceName);
+    }
+
+    /**
+     * Retrieves all workspaces in a namespace with a single paged LIST.
+     *
+     * @param namespace The namespace to list
+     * @return A map of the workspaces in the namespace keyed by name
+     * @throws WorkspaceListException If any page of the LIST fails
+     */
+    public Map<String, V1AnalyticsWorkspace> getWorkspacesInNamespace(String namespace) {
+        LOG.debugf("Fetching Workspaces in namespace '%s'", namespace);
+        HashMap<String, V1AnalyticsWorkspace> workspaces = new HashMap<String, V1AnalyticsWorkspace>();
+        forEachPage(workspaceApi, namespace, config.getWorkspaceLabelSelector(), workspace -> {
+            workspaces.put(workspace.getMetadata().getName(), workspace);
+            return true;
+        });
+        return workspaces;
+    }
+
     /**
      * Patches a V1AnalyticsWorkspaceBinding in the specified namespace to
      * update its replica count.
@@ -217,38 +912,296 @@ public class WorkspaceKubernetesClient {
     public V1AnalyticsWorkspaceBinding patchWorkspaceBindingScale(String namespace, String workspaceBindingName, Integer value) {
         String jsonPatchString = String.format("[{\"op\":\"replace\", \"path\":\"/spec/replicas\", \"value\":%d}]", value);
         KubernetesApiResponse<V1AnalyticsWorkspaceBinding> response = workspaceBindingApi.patch(namespace, workspaceBindingName, "application/json-patch+json", new V1Patch(jsonPatchString));
-        LOG.info(String.format("HttpStatusCode is: %s", response.getHttpStatusCode()));
-        LOG.info(String.format("Status is: %s", response.getStatus()));
+        if (!response.isSuccess()) {
+            LOG.warn(String.format("Unable to set replica=%d on binding '%s', HTTP %d: %s", value, workspaceBindingName, response.getHttpStatusCode(), response.getStatus()));
+        }
         return response.getObject();
     }
 
+    /**
+     * Adds the username label to a workspace binding using a JSON merge
+     * patch. The label value is derived from the username in the same way as
+     * the label lookup.
+     *
+     * @param namespace The Kubernetes namespace where the workspace binding is
+     * located
+     * @param workspaceBindingName The name of the workspace binding to be
+     * patched
+     * @param username The username the binding belongs to
+     * @return The updated V1AnalyticsWorkspaceBinding object, or null if the
+     * patch failed
+     */
+    public V1AnalyticsWorkspaceBinding patchWorkspaceBindingUsernameLabel(String namespace, String workspaceBindingName, String username) {
+        JsonObject labels = new JsonObject();
+        labels.addProperty(config.getUsernameLabel(), usernameToLabel(username));
+        JsonObject metadata = new JsonObject();
+        metadata.add("labels", labels);
+        JsonObject patch = new JsonObject();
+        patch.add("metadata", metadata);
+
+        LOG.debugf("Labelling binding '%s' with username '%s'", workspaceBindingName, username);
+        KubernetesApiResponse<V1AnalyticsWorkspaceBinding> response = workspaceBindingApi.patch(namespace, workspaceBindingName, "application/merge-patch+json", new V1Patch(patch.toString()));
+        if (!response.isSuccess()) {
+            LOG.warn(String.format("Unable to label binding '%s': %s", workspaceBindingName, response.getStatus()));
+        }
+        return response.getObject();
+    }
+
+    /**
+     * @return The label backfill, or null if it is disabled
+     */
+    public WorkspaceLabelBackfill getLabelBackfill() {
+        return labelBackfill;
+    }
+
+    /**
+     * Records whether any workspace bindings are still missing the username
+     * label. While none are, lookups skip the scan of unlabelled bindings.
+     *
+     * @param unlabelledBindingsCleared true if every binding with a
+     * spec.username carries the username label
+     */
+    public void setUnlabelledBindingsCleared(boolean unlabelledBindingsCleared) {
+        if (this.unlabelledBindingsCleared != unlabelledBindingsCleared) {
+            LOG.info(String.format("Scan of unlabelled Workspace Bindings %s", unlabelledBindingsCleared ? "disabled" : "enabled"));
+        }
+        this.unlabelledBindingsCleared = unlabelledBindingsCleared;
+    }
+
     /**
      * Sets the specified workspace binding as active for a user by scaling it
      * to 1 replica, and scales down all other workspace bindings to 0 replicas.
      *
-     * This method first retrieves all workspace bindings for the given user,
-     * then iterates through them to determine which should be active. Only the
-     * binding with a name matching the provided workspaceBindingName will be
+     * This method first retrieves summaries of all workspace bindings for the
+     * given user, then iterates through them to determine which should be
+     * active. Only the binding with a name matching the provided workspaceBindingName will be
      * set to 1 replica (active), while all others will be set to 0 replicas
      * (inactive).
      *
+     * Bindings whose spec.replicas already matches the desired value are not
+     * patched, so repeated calls for the same user do not write to the API
+     * server or bump the resourceVersion of unchanged bindings.
+     *
+     * When parallel patching is enabled, the scale up of the selected binding
+     * is issued first and awaited, after which the scale downs of the other
+     * bindings are issued concurrently on virtual threads, bounded by the per
+     * user and global concurrency limits.
+     *
+     * The activation is bounded by the configured activation deadline and
+     * made through the circuit breaker when it is enabled. If it fails or the
+     * breaker is open, the selected binding is reported as failed. An
+     * activation in which any patch failed counts as a failure towards
+     * opening the breaker.
+     *
      * @param workspaceBindingName The name of the workspace binding to set as
      * active
      * @param username The username of the user whose workspace bindings will be
      * modified
+     * @return A summary of the bindings that were changed, skipped and failed
      */
-    public void setActiveWorkspaceBindingForUser(String workspaceBindingName, String username) {
+    public WorkspaceActivationResult setActiveWorkspaceBindingForUser(String workspaceBindingName, String username) {
+        return guard("activation", config.getActivationDeadlineMillis(),
+                () -> reconcileWorkspaceBindingsForUser(workspaceBindingName, username),
+                () -> {
+                    WorkspaceActivationResult result = new WorkspaceActivationResult(username, workspaceBindingName);
+                    result.addFailed(workspaceBindingName, "Kubernetes API server unavailable");
+                    return result;
+                },
+                result -> !result.isSuccessful());
+    }
 
-        List<V1AnalyticsWorkspaceBinding> bindings = getAllWorkspaceBindingsForUser(username);
-        for (V1AnalyticsWorkspaceBinding binding : bindings) {
-            String bindingName = binding.getMetadata().getName();
+    /**
+     * Scales the bindings of a user, as described by
+     * {@link #setActiveWorkspaceBindingForUser(String, String)}.
+     *
+     * @param workspaceBindingName The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose workspace bindings will be
+     * modified
+     * @return A summary of the bindings that were changed, skipped and failed
+     */
+    protected WorkspaceActivationResult reconcileWorkspaceBindingsForUser(String workspaceBindingName, String username) {
+        WorkspaceActivationResult result = new WorkspaceActivationResult(username, workspaceBindingName);
+        List<WorkspaceBindingSummary> scaleUps = new ArrayList<WorkspaceBindingSummary>();
+        List<WorkspaceBindingSummary> scaleDowns = new ArrayList<WorkspaceBindingSummary>();
+        List<WorkspaceBindingSummary> bindings = getAllWorkspaceBindingSummariesForUser(username);
+        WorkspaceMetrics.record(WorkspaceMetrics.BINDINGS_PER_USER, bindings.size());
+        for (WorkspaceBindingSummary binding : bindings) {
+            String bindingName = binding.getName();
             Integer replicas = 0;
             if (bindingName.equals(workspaceBindingName)) {
                 replicas = 1;
+                result.setWorkspaceBindingNamespace(binding.getNamespace());
             }
 
-            LOG.info(String.format("Setting replica=%d on binding '%s' for user '%s'", replicas, bindingName, username));
-            patchWorkspaceBindingScale(binding.getMetadata().getNamespace(), bindingName, replicas);
+            if (replicas.equals(binding.getReplicas())) {
+                LOG.debugf("Binding '%s' for user '%s' already has replica=%d", bindingName, username, replicas);
+                result.addSkipped(bindingName);
+            } else if (replicas > 0) {
+                scaleUps.add(binding);
+            } else {
+                scaleDowns.add(binding);
+            }
+        }
+
+        if (patchExecutor != null) {
+            Semaphore userPermits = new Semaphore(config.getPatchConcurrencyPerUser());
+            awaitWorkspaceBindingScales(result, submitWorkspaceBindingScales(scaleUps, 1, userPermits));
+            awaitWorkspaceBindingScales(result, submitWorkspaceBindingScales(scaleDowns, 0, userPermits));
+        } else {
+            for (WorkspaceBindingSummary binding : scaleUps) {
+                applyWorkspaceBindingScale(result, binding.getNamespace(), binding.getName(), 1);
+            }
+            for (WorkspaceBindingSummary binding : scaleDowns) {
+                applyWorkspaceBindingScale(result, binding.getNamespace(), binding.getName(), 0);
+            }
         }
+
+        LOG.info(String.format("Activated workspace binding for %s", result));
+        return result;
+    }
+
+    /**
+     * Patches the replica count of a binding and records the outcome against
+     * the activation result.
+     *
+     * @param result The result to record the outcome against
+     * @param namespace The namespace of the workspace binding
+     * @param bindingName The name of the workspace binding
+     * @param replicas The new replica count
+     */
+    protected void applyWorkspaceBindingScale(WorkspaceActivationResult result, String namespace, String bindingName, Integer replicas) {
+        String error = scaleWorkspaceBinding(namespace, bindingName, replicas);
+        if (error == null) {
+            result.addChanged(bindingName);
+        } else {
+            result.addFailed(bindingName, error);
+        }
+    }
+
+    /**
+     * Patches the replica count of a binding, capturing any failure.
+     *
+     * @param namespace The namespace of the workspace binding
+     * @param bindingName The name of the workspace binding
+     * @param replicas The new replica count
+     * @return null if the patch succeeded, otherwise a description of the
+     * failure
+     */
+    protected String scaleWorkspaceBinding(String namespace, String bindingName, Integer replicas) {
+        LOG.debugf("Setting replica=%d on binding '%s'", replicas, bindingName);
+        try {
+            if (patchWorkspaceBindingScale(namespace, bindingName, replicas) == null) {
+                return "Patch was rejected by the API server";
+            }
+            return null;
+        } catch (RuntimeException ex) {
+            LOG.error(String.format("Failed to set replica=%d on binding '%s'", replicas, bindingName), ex);
+            return ex.toString();
+        }
+    }
+
+    /**
+     * Submits replica patches for a set of bindings to the patch executor.
+     * Each patch holds a per user and a global permit while it is in flight.
+     *
+     * @param bindings The bindings to patch
+     * @param replicas The new replica count
+     * @param userPermits The permits limiting concurrency for the current user
+     * @return The pending patches keyed by binding name, each completing with
+     * null on success or a description of the failure
+     */
+    protected Map<String, Future<String>> submitWorkspaceBindingScales(List<WorkspaceBindingSummary> bindings, Integer replicas, Semaphore userPermits) {
+        Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+        for (WorkspaceBindingSummary binding : bindings) {
+            String namespace = binding.getNamespace();
+            String bindingName = binding.getName();
+            futures.put(bindingName, patchExecutor.submit(() -> {
+                userPermits.acquire();
+                try {
+                    globalPatchPermits.acquire();
+                    try {
+                        return scaleWorkspaceBinding(namespace, bindingName, replicas);
+                    } finally {
+                        globalPatchPermits.release();
+                    }
+                } finally {
+                    userPermits.release();
+                }
+            }));
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for submitted patches to complete and records their outcomes.
+     * Each patch is given the configured timeout measured from the start of
+     * the wait, patches still running after that are cancelled and reported
+     * as failed.
+     *
+     * @param result The result to record the outcomes against
+     * @param futures The pending patches keyed by binding name
+     */
+    protected void awaitWorkspaceBindingScales(WorkspaceActivationResult result, Map<String, Future<String>> futures) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getPatchTimeoutMillis());
+        for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+            String bindingName = entry.getKey();
+            Future<String> future = entry.getValue();
+            try {
+                String error = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (error == null) {
+                    result.addChanged(bindingName);
+                } else {
+                    result.addFailed(bindingName, error);
+                }
+            } catch (TimeoutException ex) {
+                future.cancel(true);
+                result.addFailed(bindingName, String.format("Timed out after %dms", config.getPatchTimeoutMillis()));
+            } catch (ExecutionException ex) {
+                result.addFailed(bindingName, ex.getCause().toString());
+            } catch (InterruptedException ex) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                result.addFailed(bindingName, "Interrupted");
+            }
+        }
+    }
+
+    /**
+     * Waits for a workspace binding to report that its workspace is ready,
+     * blocking the calling thread for no longer than the configured readiness
+     * timeout.
+     *
+     * @param namespace The namespace of the workspace binding, if null the
+     * method returns immediately
+     * @param workspaceBindingName The name of the workspace binding
+     * @return true if the binding reported ready within the timeout
+     */
+    public boolean waitForWorkspaceBindingReady(String namespace, String workspaceBindingName) {
+        if (namespace == null || readinessWaiter == null) {
+            return false;
+        }
+
+        LOG.debugf("Waiting for Workspace Binding '%s' to be ready", workspaceBindingName);
+        return readinessWaiter.waitForReady(namespace, workspaceBindingName, Duration.ofSeconds(config.getReadinessTimeoutSeconds()));
+    }
+
+    /**
+     * Determines from the binding cache whether a workspace binding is
+     * currently scaled up.
+     *
+     * @param namespace The namespace of the workspace binding
+     * @param workspaceBindingName The name of the workspace binding
+     * @return true if the binding has at least one replica, false if it has
+     * none or no longer exists, or null if the binding cache is disabled or not
+     * yet synced
+     */
+    public Boolean isWorkspaceBindingActive(String namespace, String workspaceBindingName) {
+        if (bindingCache == null || !bindingCache.hasSynced()) {
+            return null;
+        }
+
+        V1AnalyticsWorkspaceBinding binding = bindingCache.get(namespace, workspaceBindingName);
+        return binding != null && binding.getSpec() != null && binding.getSpec().getReplicas() != null && binding.getSpec().getReplicas() > 0;
     }
 }
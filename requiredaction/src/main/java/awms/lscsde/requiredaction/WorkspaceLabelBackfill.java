@@ -0,0 +1,249 @@
+/**
+ * Adds the username label to workspace bindings which are missing it.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} so that, once
+ * every binding carries the username label, a user's bindings can be found
+ * with a single label selector instead of also scanning every unlabelled
+ * binding in the cluster.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Gauge;
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.timer.ScheduledTask;
+
+/**
+ * A background reconciler which lists the bindings without the username label
+ * and patches the label in, derived from spec.username using the same
+ * sanitising as the label lookup.
+ *
+ * Labelling is a scheduled task, run on a single node of the cluster at each
+ * interval by the {@link WorkspaceRequiredActionFactory}. The task only
+ * hands a labelling pass to the backfill's own thread, so the rate limited
+ * patching never holds up the Keycloak timer. Each pass labels at most one
+ * batch of bindings, patching them one after another at the configured rate,
+ * and a run is skipped while the previous pass is still queued or running.
+ *
+ * Every node also checks the unlabelled bindings on its own schedule, without
+ * patching them, as each node decides for itself whether its lookups need to
+ * scan them. Only a pass which listed every page is trusted. The number of
+ * unlabelled bindings that still have a spec.username is published as the
+ * backlog, and when it reaches zero the client is told that the unlabelled
+ * scan is no longer needed. If unlabelled bindings appear again, the next
+ * pass turns the scan back on. A pass whose continue token expires is
+ * restarted from the first page, and a pass which fails leaves the client as
+ * it was.
+ *
+ * The following meters are published:
+ * <ul>
+ * <li>{@code awms.workspace.label.backfill.backlog}, the unlabelled bindings
+ * remaining after the last complete pass</li>
+ * <li>{@code awms.workspace.label.backfill.patched}, bindings labelled</li>
+ * <li>{@code awms.workspace.label.backfill.failures}, patches that
+ * failed</li>
+ * </ul>
+ */
+public class WorkspaceLabelBackfill implements ScheduledTask {
+
+    public static final String TASK_NAME = "awms-workspace-label-backfill";
+    protected static final int MAX_RESTARTS = 3;
+    private static final Logger LOG = Logger.getLogger(WorkspaceLabelBackfill.class);
+
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected long intervalSeconds;
+    protected int batchSize;
+    protected long patchIntervalMillis;
+    protected AtomicInteger backlog = new AtomicInteger(-1);
+    protected AtomicBoolean labelling = new AtomicBoolean(false);
+    protected volatile ScheduledExecutorService scheduler;
+
+    /**
+     * @param workspaceClient The client used to list and patch bindings
+     * @param config The configuration of the backfill
+     */
+    public WorkspaceLabelBackfill(WorkspaceKubernetesClient workspaceClient, WorkspaceClientConfig config) {
+        this.workspaceClient = workspaceClient;
+        this.intervalSeconds = config.getLabelBackfillIntervalSeconds();
+        this.batchSize = config.getLabelBackfillBatchSize();
+        this.patchIntervalMillis = 1000L / Math.max(1, config.getLabelBackfillPatchesPerSecond());
+        Gauge.builder(WorkspaceMetrics.LABEL_BACKFILL_BACKLOG, backlog, AtomicInteger::get)
+                .register(WorkspaceMetrics.registry());
+    }
+
+    /**
+     * Schedules the checks of this node, the first of which runs immediately.
+     * Labelling passes run on the same thread, after any check in progress.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, TASK_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkSafely, 0L, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops any further checks.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The number of unlabelled bindings remaining after the last
+     * complete pass, or -1 if no pass has completed
+     */
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * Queues a pass labelling a batch of unlabelled bindings on the backfill's
+     * own thread, unless one is already queued or running, and returns
+     * without waiting for it.
+     *
+     * @param session The current Keycloak session
+     */
+    @Override
+    public void run(KeycloakSession session) {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            return;
+        }
+        if (!labelling.compareAndSet(false, true)) {
+            LOG.debug("Workspace Binding label backfill still running, skipping");
+            return;
+        }
+        try {
+            executor.execute(this::labelSafely);
+        } catch (RejectedExecutionException ex) {
+            labelling.set(false);
+            LOG.debug("Workspace Binding label backfill stopped, skipping");
+        }
+    }
+
+    protected void labelSafely() {
+        try {
+            runPass(true);
+        } catch (RuntimeException ex) {
+            LOG.error("Workspace Binding label backfill failed", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            labelling.set(false);
+        }
+    }
+
+    protected void checkSafely() {
+        try {
+            runPass(false);
+        } catch (RuntimeException ex) {
+            LOG.error("Workspace Binding label check failed", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a pass, restarting it from the first page if the continue token
+     * expires part way through.
+     *
+     * @param label true to label the bindings, false to only count them
+     * @throws InterruptedException If the pass is stopped while rate limited
+     * @throws WorkspaceListException If a page cannot be listed
+     */
+    protected void runPass(boolean label) throws InterruptedException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                pass(label);
+                return;
+            } catch (WorkspaceListException ex) {
+                if (!ex.isExpired() || attempt >= MAX_RESTARTS) {
+                    throw ex;
+                }
+                LOG.info("Workspace Binding label backfill listing expired, restarting from the first page");
+            }
+        }
+    }
+
+    /**
+     * Runs a single pass over every unlabelled binding that has a
+     * spec.username, labelling up to one batch of them when asked to. The
+     * unlabelled bindings are listed page by page, so a large backlog is never
+     * held in memory at once. The backlog, and whether the unlabelled scan is
+     * needed, are only updated once every page has been listed.
+     *
+     * @param label true to label the bindings, false to only count them
+     * @throws InterruptedException If the pass is stopped while rate limited
+     * @throws WorkspaceListException If a page cannot be listed
+     */
+    protected void pass(boolean label) throws InterruptedException {
+        int[] counts = new int[3];
+        boolean completed = workspaceClient.forEachWorkspaceBinding(workspaceClient.unlabelledSelector(), binding -> {
+            counts[0]++;
+            String username = binding.getUsername();
+            if (username == null || username.isEmpty()) {
+                return true;
+            }
+            if (!label || counts[2] >= batchSize) {
+                counts[1]++;
+                return true;
+            }
+
+            counts[2]++;
+            if (!labelBinding(binding)) {
+                counts[1]++;
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(patchIntervalMillis);
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+
+        if (!completed) {
+            throw new InterruptedException("Workspace Binding label backfill stopped");
+        }
+
+        int remaining = counts[1];
+        backlog.set(remaining);
+        workspaceClient.setUnlabelledBindingsCleared(remaining == 0);
+        if (label) {
+            LOG.info(String.format("Workspace Binding label backfill complete, %d of %d unlabelled binding(s) remaining", remaining, counts[0]));
+        } else {
+            LOG.debugf("Workspace Binding label check complete, %d of %d unlabelled binding(s) remaining", remaining, counts[0]);
+        }
+    }
+
+    /**
+     * @param binding The binding to label
+     * @return true if the label was added
+     */
+    protected boolean labelBinding(WorkspaceBindingSummary binding) {
+        try {
+            if (workspaceClient.patchWorkspaceBindingUsernameLabel(binding.getNamespace(), binding.getName(), binding.getUsername()) != null) {
+                WorkspaceMetrics.increment(WorkspaceMetrics.LABEL_BACKFILL_PATCHED);
+                return true;
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn(String.format("Unable to label Workspace Binding '%s'", binding.getName()), ex);
+        }
+        WorkspaceMetrics.increment(WorkspaceMetrics.LABEL_BACKFILL_FAILURES);
+        return false;
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Reports a failed page of a paginated LIST.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceKubernetesClient} so that a LIST
+ * which could not be completed is never mistaken for one which found nothing
+ * more.</p>
+ */
+package awms.lscsde.requiredaction;
+
+/**
+ * Thrown when a page of a LIST of workspaces or workspace bindings is not
+ * returned by the API server, carrying the HTTP status code of the response.
+ *
+ * A status of 410 means the continue token has expired, and the listing must
+ * be restarted from the first page to see a consistent set of items.
+ */
+public class WorkspaceListException extends IllegalStateException {
+
+    protected final int httpStatusCode;
+
+    /**
+     * @param message The description of the failure
+     * @param httpStatusCode The HTTP status code of the response, or 0 if the
+     * API server could not be reached
+     */
+    public WorkspaceListException(String message, int httpStatusCode) {
+        super(message);
+        this.httpStatusCode = httpStatusCode;
+    }
+
+    public int getHttpStatusCode() {
+        return httpStatusCode;
+    }
+
+    /**
+     * @return true if the continue token of the listing expired
+     */
+    public boolean isExpired() {
+        return httpStatusCode == 410;
+    }
+}
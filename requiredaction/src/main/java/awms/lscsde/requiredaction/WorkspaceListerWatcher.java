@@ -0,0 +1,79 @@
+/**
+ * Provides the LIST and WATCH calls used by the workspace informers.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceBindingCache} and
+ * {@link WorkspaceCache} so that informers observe only the configured
+ * namespaces and label selectors.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import io.kubernetes.client.common.KubernetesListObject;
+import io.kubernetes.client.common.KubernetesObject;
+import io.kubernetes.client.informer.ListerWatcher;
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.util.CallGeneratorParams;
+import io.kubernetes.client.util.Watchable;
+import io.kubernetes.client.util.generic.GenericKubernetesApi;
+import io.kubernetes.client.util.generic.options.ListOptions;
+
+/**
+ * A ListerWatcher backed by a GenericKubernetesApi, scoped to a single
+ * namespace, or to all namespaces, and an optional label selector.
+ *
+ * @param <ApiType> The type of the watched resource
+ * @param <ApiListType> The list type of the watched resource
+ */
+public class WorkspaceListerWatcher<ApiType extends KubernetesObject, ApiListType extends KubernetesListObject>
+        implements ListerWatcher<ApiType, ApiListType> {
+
+    protected GenericKubernetesApi<ApiType, ApiListType> api;
+    protected String namespace;
+    protected String labelSelector;
+
+    /**
+     * @param api The API used to access the resource
+     * @param namespace The namespace to observe, or null for all namespaces
+     * @param labelSelector The label selector to apply, or null for none
+     */
+    public WorkspaceListerWatcher(GenericKubernetesApi<ApiType, ApiListType> api, String namespace, String labelSelector) {
+        this.api = api;
+        this.namespace = namespace;
+        this.labelSelector = labelSelector;
+    }
+
+    @Override
+    public ApiListType list(CallGeneratorParams params) throws ApiException {
+        ListOptions listOptions = listOptions(params);
+        if (namespace == null) {
+            return api.list(listOptions).throwsApiException().getObject();
+        }
+        return api.list(namespace, listOptions).throwsApiException().getObject();
+    }
+
+    @Override
+    public Watchable<ApiType> watch(CallGeneratorParams params) throws ApiException {
+        ListOptions listOptions = listOptions(params);
+        if (namespace == null) {
+            return api.watch(listOptions);
+        }
+        return api.watch(namespace, listOptions);
+    }
+
+    /**
+     * @return The namespace observed, or null for all namespaces
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    protected ListOptions listOptions(CallGeneratorParams params) {
+        ListOptions listOptions = new ListOptions();
+        listOptions.setResourceVersion(params.resourceVersion);
+        listOptions.setTimeoutSeconds(params.timeoutSeconds);
+        if (labelSelector != null) {
+            listOptions.setLabelSelector(labelSelector);
+        }
+        return listOptions;
+    }
+}
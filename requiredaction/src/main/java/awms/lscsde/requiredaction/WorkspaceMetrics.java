@@ -0,0 +1,135 @@
+/**
+ * Provides access to the metrics published by the workspace required action.
+ *
+ * <p>
+ * Meters are registered with the Micrometer global registry, which Keycloak
+ * exposes on its metrics endpoint when metrics are enabled.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Names and helpers for the meters published by the extension.
+ *
+ * All meter names share the {@code awms.workspace} prefix so that they can be
+ * found together on the metrics endpoint.
+ */
+public class WorkspaceMetrics {
+
+    public static final String PREFIX = "awms.workspace";
+    public static final String READINESS_WAIT = PREFIX + ".readiness.wait";
+    public static final String ACTIVATION_QUEUE_DEPTH = PREFIX + ".activation.queue.depth";
+    public static final String ACTIVATION_LATENCY = PREFIX + ".activation.latency";
+    public static final String ACTIVATION_FAILURES = PREFIX + ".activation.failures";
+    public static final String ACTIVATION_COALESCED = PREFIX + ".activation.coalesced";
+    public static final String ACTIVATION_SUPERSEDED = PREFIX + ".activation.superseded";
+    public static final String LABEL_BACKFILL_BACKLOG = PREFIX + ".label.backfill.backlog";
+    public static final String LABEL_BACKFILL_PATCHED = PREFIX + ".label.backfill.patched";
+    public static final String LABEL_BACKFILL_FAILURES = PREFIX + ".label.backfill.failures";
+    public static final String CIRCUIT_STATE = PREFIX + ".circuit.state";
+    public static final String CIRCUIT_REJECTED = PREFIX + ".circuit.rejected";
+    public static final String FALLBACK_HITS = PREFIX + ".fallback.hits";
+    public static final String OPERATION_TIMEOUTS = PREFIX + ".operation.timeouts";
+    public static final String REAPER_REAPED = PREFIX + ".reaper.reaped";
+    public static final String PREWARM = PREFIX + ".prewarm";
+    public static final String ADMIN_SCALED = PREFIX + ".admin.scaled";
+    public static final String API_REQUESTS = PREFIX + ".api.requests";
+    public static final String API_ERRORS = PREFIX + ".api.errors";
+    public static final String CLIENT_OPERATION = PREFIX + ".client.operation";
+    public static final String REQUIRED_ACTION_PHASE = PREFIX + ".requiredaction.phase";
+    public static final String BINDINGS_PER_USER = PREFIX + ".bindings.per.user";
+
+    public static final String TAG_OUTCOME = "outcome";
+    public static final String TAG_OPERATION = "operation";
+    public static final String TAG_VERB = "verb";
+    public static final String TAG_RESOURCE = "resource";
+    public static final String TAG_STATUS = "status";
+    public static final String TAG_PHASE = "phase";
+
+    private WorkspaceMetrics() {
+    }
+
+    /**
+     * @return The registry meters are published to
+     */
+    public static MeterRegistry registry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * Records a duration against a timer.
+     *
+     * @param name The name of the timer
+     * @param duration The duration to record
+     * @param tags Alternating tag keys and values
+     */
+    public static void recordTime(String name, Duration duration, String... tags) {
+        Timer.builder(name).tags(tags).register(registry()).record(duration);
+    }
+
+    /**
+     * Increments a counter by one.
+     *
+     * @param name The name of the counter
+     * @param tags Alternating tag keys and values
+     */
+    public static void increment(String name, String... tags) {
+        Counter.builder(name).tags(tags).register(registry()).increment();
+    }
+
+    /**
+     * Records the time since a start time against a timer, tagged with the
+     * outcome.
+     *
+     * @param name The name of the timer
+     * @param startNanos The start time, from {@link System#nanoTime()}
+     * @param success true if the timed work succeeded
+     * @param tags Alternating tag keys and values
+     */
+    public static void recordTime(String name, long startNanos, boolean success, String... tags) {
+        Timer.builder(name).tags(tags).tag(TAG_OUTCOME, success ? "success" : "failure")
+                .register(registry()).record(Duration.ofNanos(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Times a call against a timer, tagged with the outcome, which is a
+     * failure if the call throws.
+     *
+     * @param name The name of the timer
+     * @param call The call to time
+     * @param tags Alternating tag keys and values
+     * @return The result of the call
+     */
+    public static <T> T time(String name, Supplier<T> call, String... tags) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            recordTime(name, start, success, tags);
+        }
+    }
+
+    /**
+     * Records a value against a distribution summary, publishing a histogram
+     * so that percentiles can be aggregated across nodes.
+     *
+     * @param name The name of the distribution summary
+     * @param value The value to record
+     * @param tags Alternating tag keys and values
+     */
+    public static void record(String name, double value, String... tags) {
+        DistributionSummary.builder(name).tags(tags).publishPercentileHistogram()
+                .register(registry()).record(value);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Starts the user's last workspace while they are still authenticating.
+ *
+ * <p>
+ * This class is created by the {@link WorkspacePrewarmAuthenticatorFactory}
+ * so that the start up of the pod behind a binding overlaps the remaining
+ * steps of the login, such as completing MFA or the required actions.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.jboss.logging.Logger;
+import org.keycloak.authentication.AuthenticationFlowContext;
+import org.keycloak.authentication.Authenticator;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.sessions.AuthenticationSessionModel;
+
+/**
+ * An authenticator which, once the user has authenticated, activates the
+ * binding stored in their {@link WorkspaceSelection} in the background. It
+ * always succeeds and never holds up the flow.
+ *
+ * The user has authenticated once an earlier step of the flow that verifies
+ * them, such as the password form or the cookie, has succeeded in the current
+ * authentication session. Identifying the user, for example with the username
+ * form, is not enough, so that workspaces cannot be started by anyone who
+ * knows a username. If no such step has succeeded the pre-warm is skipped.
+ *
+ * The activation goes through the activation coalescer of the
+ * {@link WorkspaceRequiredActionFactory}, so if the user then picks a
+ * different workspace, that activation runs after the pre-warm and scales the
+ * pre-warmed binding back down. The activation is recorded in the activation
+ * memo against the authentication session, whose id becomes the id of the
+ * user session, so the same activation is not repeated once the login
+ * completes.
+ *
+ * At most the configured number of pre-warms run at once, further requests
+ * are dropped while that many are in flight.
+ */
+public class WorkspacePrewarmAuthenticator implements Authenticator {
+
+    private static final Logger LOG = Logger.getLogger(WorkspacePrewarmAuthenticator.class);
+
+    protected WorkspaceRequiredActionFactory requiredActionFactory;
+    protected ExecutorService executor;
+    protected Semaphore permits;
+    protected Set<String> credentialAuthenticators;
+
+    /**
+     * @param requiredActionFactory The factory holding the shared workspace
+     * components
+     * @param executor The executor the pre-warms run on
+     * @param permits The permits bounding the number of concurrent pre-warms
+     * @param credentialAuthenticators The ids of the authenticators which
+     * verify the user
+     */
+    public WorkspacePrewarmAuthenticator(WorkspaceRequiredActionFactory requiredActionFactory, ExecutorService executor, Semaphore permits, Set<String> credentialAuthenticators) {
+        this.requiredActionFactory = requiredActionFactory;
+        this.executor = executor;
+        this.permits = permits;
+        this.credentialAuthenticators = credentialAuthenticators;
+    }
+
+    @Override
+    public void authenticate(AuthenticationFlowContext context) {
+        try {
+            prewarm(context);
+        } catch (RuntimeException ex) {
+            LOG.warn("Unable to pre-warm workspace", ex);
+        }
+        context.success();
+    }
+
+    /**
+     * Starts the activation of the user's stored binding, unless the user is
+     * not yet known or authenticated, has no stored binding, it has already
+     * been activated in this session or too many pre-warms are in flight.
+     *
+     * @param context The authentication flow context
+     */
+    protected void prewarm(AuthenticationFlowContext context) {
+        UserModel user = context.getUser();
+        if (user == null || requiredActionFactory == null || requiredActionFactory.getWorkspaceClient() == null) {
+            return;
+        }
+        if (!isAuthenticated(context)) {
+            LOG.debugf("User '%s' has not authenticated yet, not pre-warming", user.getUsername());
+            WorkspaceMetrics.increment(WorkspaceMetrics.PREWARM, WorkspaceMetrics.TAG_OUTCOME, "unauthenticated");
+            return;
+        }
+        WorkspaceSelection selection = WorkspaceSelection.read(user);
+        if (selection == null) {
+            return;
+        }
+        String workspaceBinding = selection.getBindingName();
+
+        String username = user.getUsername();
+        String sessionId = context.getAuthenticationSession().getParentSession().getId();
+        WorkspaceActivationMemo activationMemo = requiredActionFactory.getActivationMemo();
+        if (activationMemo != null && activationMemo.isActivated(sessionId, workspaceBinding)) {
+            WorkspaceMetrics.increment(WorkspaceMetrics.PREWARM, WorkspaceMetrics.TAG_OUTCOME, "skipped");
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            LOG.debugf("Too many pre-warms in flight, not pre-warming binding '%s' for user '%s'", workspaceBinding, username);
+            WorkspaceMetrics.increment(WorkspaceMetrics.PREWARM, WorkspaceMetrics.TAG_OUTCOME, "saturated");
+            return;
+        }
+
+        LOG.debugf("Pre-warming binding '%s' for user '%s'", workspaceBinding, username);
+        WorkspaceMetrics.increment(WorkspaceMetrics.PREWARM, WorkspaceMetrics.TAG_OUTCOME, "started");
+        executor.execute(() -> {
+            try {
+                WorkspaceActivationResult result = requiredActionFactory.activate(workspaceBinding, username).join();
+                if (activationMemo != null) {
+                    activationMemo.record(sessionId, result);
+                }
+            } catch (RuntimeException ex) {
+                LOG.warn(String.format("Pre-warm of binding '%s' for user '%s' failed", workspaceBinding, username), ex);
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Determines whether a step which verifies the user has succeeded in the
+     * current authentication session.
+     *
+     * @param context The authentication flow context
+     * @return true if one of the credential authenticators has succeeded
+     */
+    protected boolean isAuthenticated(AuthenticationFlowContext context) {
+        RealmModel realm = context.getRealm();
+        for (Map.Entry<String, AuthenticationSessionModel.ExecutionStatus> entry : context.getAuthenticationSession().getExecutionStatus().entrySet()) {
+            if (entry.getValue() != AuthenticationSessionModel.ExecutionStatus.SUCCESS) {
+                continue;
+            }
+            AuthenticationExecutionModel execution = realm.getAuthenticationExecutionById(entry.getKey());
+            if (execution != null && credentialAuthenticators.contains(execution.getAuthenticator())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void action(AuthenticationFlowContext context) {
+        context.success();
+    }
+
+    @Override
+    public boolean requiresUser() {
+        return false;
+    }
+
+    @Override
+    public boolean configuredFor(KeycloakSession session, RealmModel realm, UserModel user) {
+        return true;
+    }
+
+    @Override
+    public void setRequiredActions(KeycloakSession session, RealmModel realm, UserModel user) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
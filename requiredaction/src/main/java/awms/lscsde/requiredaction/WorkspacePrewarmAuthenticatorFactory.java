@@ -0,0 +1,152 @@
+/**
+ * A Keycloak authenticator factory for pre-warming the user's last workspace.
+ * <p>
+ * This class registers the {@link WorkspacePrewarmAuthenticator} with
+ * Keycloak. Add the "Workspace Pre-warm" step to a browser flow after the
+ * step that verifies the user's credentials, for example the password form,
+ * so that the workspace starts while the remaining steps, such as OTP, are
+ * completed.
+ *
+ * @see AuthenticatorFactory
+ * @see WorkspacePrewarmAuthenticator
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.google.auto.service.AutoService;
+import org.keycloak.Config;
+import org.keycloak.authentication.Authenticator;
+import org.keycloak.authentication.AuthenticatorFactory;
+import org.keycloak.authentication.RequiredActionProvider;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ProviderConfigProperty;
+
+/**
+ * Creates WorkspacePrewarmAuthenticator instances sharing a single executor
+ * and concurrency limit.
+ *
+ * The workspace client and activation components are those of the
+ * {@link WorkspaceRequiredActionFactory}, found through the session factory.
+ * The maximum number of concurrent pre-warms is read from the
+ * {@code concurrency} option of this provider, for example
+ * {@code --spi-authenticator-workspace-prewarm-concurrency=8}. The ids of the
+ * authenticators which verify the user, one of which must have succeeded
+ * before a pre-warm starts, are read from the
+ * {@code credential-authenticators} option as a comma separated list.
+ */
+@AutoService(AuthenticatorFactory.class)
+public class WorkspacePrewarmAuthenticatorFactory implements AuthenticatorFactory {
+
+    public static final String PROVIDER_ID = "workspace-prewarm";
+    public static final String CONCURRENCY = "concurrency";
+    public static final String CREDENTIAL_AUTHENTICATORS = "credential-authenticators";
+    protected static final int DEFAULT_CONCURRENCY = 8;
+    protected static final String[] DEFAULT_CREDENTIAL_AUTHENTICATORS = {
+        "auth-cookie",
+        "auth-username-password-form",
+        "auth-password-form",
+        "auth-otp-form",
+        "auth-conditional-otp-form",
+        "webauthn-authenticator",
+        "webauthn-authenticator-passwordless",
+        "auth-x509-client-username-form",
+        "auth-spnego"
+    };
+    private static final AuthenticationExecutionModel.Requirement[] REQUIREMENT_CHOICES = {
+        AuthenticationExecutionModel.Requirement.REQUIRED,
+        AuthenticationExecutionModel.Requirement.DISABLED
+    };
+
+    protected WorkspaceRequiredActionFactory requiredActionFactory;
+    protected ExecutorService executor;
+    protected Semaphore permits = new Semaphore(DEFAULT_CONCURRENCY);
+    protected Set<String> credentialAuthenticators = Set.of(DEFAULT_CREDENTIAL_AUTHENTICATORS);
+
+    @Override
+    public Authenticator create(KeycloakSession session) {
+        return new WorkspacePrewarmAuthenticator(requiredActionFactory, executor, permits, credentialAuthenticators);
+    }
+
+    /**
+     * Reads the maximum number of concurrent pre-warms and the credential
+     * authenticators from the SPI scope of this provider.
+     *
+     * @param scope The configuration scope of the provider
+     */
+    @Override
+    public void init(Config.Scope scope) {
+        permits = new Semaphore(scope != null ? scope.getInt(CONCURRENCY, DEFAULT_CONCURRENCY) : DEFAULT_CONCURRENCY);
+        String[] authenticators = scope != null ? scope.getArray(CREDENTIAL_AUTHENTICATORS) : null;
+        if (authenticators != null && authenticators.length > 0) {
+            credentialAuthenticators = Set.copyOf(Arrays.asList(authenticators));
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Finds the workspace required action factory, whose shared components
+     * are used by the pre-warms.
+     *
+     * @param factory The session factory of the server
+     */
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        requiredActionFactory = (WorkspaceRequiredActionFactory) factory.getProviderFactory(RequiredActionProvider.class, WorkspaceRequiredAction.PROVIDER_ID);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+    @Override
+    public String getDisplayType() {
+        return "Workspace Pre-warm";
+    }
+
+    @Override
+    public String getReferenceCategory() {
+        return null;
+    }
+
+    @Override
+    public boolean isConfigurable() {
+        return false;
+    }
+
+    @Override
+    public AuthenticationExecutionModel.Requirement[] getRequirementChoices() {
+        return REQUIREMENT_CHOICES;
+    }
+
+    @Override
+    public boolean isUserSetupAllowed() {
+        return false;
+    }
+
+    @Override
+    public String getHelpText() {
+        return "Starts the workspace the user last selected in the background once the user has authenticated. Place after the password or other credential step. Always succeeds.";
+    }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigProperties() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Waits for an analytics workspace binding to report that its workspace is
+ * ready.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} once a workspace
+ * has been selected, so that the login completes as soon as the workspace is
+ * available rather than after a fixed delay.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.util.Watch;
+import io.kubernetes.client.util.Watchable;
+import io.kubernetes.client.util.generic.GenericKubernetesApi;
+import io.kubernetes.client.util.generic.dynamic.DynamicKubernetesListObject;
+import io.kubernetes.client.util.generic.dynamic.DynamicKubernetesObject;
+import io.kubernetes.client.util.generic.options.ListOptions;
+import org.jboss.logging.Logger;
+
+/**
+ * Watches a single workspace binding until it reports ready or a deadline
+ * passes.
+ *
+ * The binding is read through the dynamic object model so that its status can
+ * be inspected without depending on the shape of the generated status class.
+ * A binding is considered ready when either:
+ * <ul>
+ * <li>{@code status.conditions} contains a {@code Ready} condition with
+ * status {@code True}, or</li>
+ * <li>{@code status.readyReplicas} or {@code status.availableReplicas} is at
+ * least 1.</li>
+ * </ul>
+ *
+ * The watch runs on a virtual thread, the calling thread waits on it for no
+ * longer than the supplied timeout and closes the watch if it expires.
+ *
+ * The binding CRD does not guarantee that these fields are set, so each
+ * binding is judged on its own status. A binding which carries any of them,
+ * or whose {@code status.observedGeneration} shows that its controller has
+ * not yet caught up with its spec, is waited on, as a controller may omit a
+ * replica count of zero until it has scaled the workspace up. Any other
+ * binding is not waited on.
+ */
+public class WorkspaceReadinessWaiter {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceReadinessWaiter.class);
+
+    protected GenericKubernetesApi<DynamicKubernetesObject, DynamicKubernetesListObject> bindingStatusApi;
+    protected ExecutorService watchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param watchApiClient The client used for the WATCH call, this should
+     * not have a read timeout as the watch is held open until the binding is
+     * ready
+     */
+    public WorkspaceReadinessWaiter(ApiClient watchApiClient) {
+        bindingStatusApi = new GenericKubernetesApi<>(DynamicKubernetesObject.class, DynamicKubernetesListObject.class,
+                WorkspaceKubernetesClient.API_GROUP, WorkspaceKubernetesClient.API_VERSION,
+                WorkspaceKubernetesClient.WORKSPACE_BINDING_PLURAL, watchApiClient);
+    }
+
+    /**
+     * Blocks until the workspace binding reports ready, the binding is
+     * deleted or the timeout expires, or returns as soon as the binding is
+     * seen if bindings do not report readiness. The time spent waiting is
+     * recorded on
+     * the {@code awms.workspace.readiness.wait} timer, tagged with the
+     * outcome.
+     *
+     * @param namespace The namespace of the workspace binding
+     * @param bindingName The name of the workspace binding
+     * @param timeout The maximum time to block the calling thread
+     * @return true if the binding reported ready within the timeout
+     */
+    public boolean waitForReady(String namespace, String bindingName, Duration timeout) {
+        long started = System.nanoTime();
+        AtomicReference<Watchable<DynamicKubernetesObject>> activeWatch = new AtomicReference<Watchable<DynamicKubernetesObject>>();
+        Future<Boolean> future = watchExecutor.submit(() -> watchUntilReady(namespace, bindingName, timeout, activeWatch));
+        String outcome = "not_ready";
+        try {
+            Boolean ready = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (ready == null) {
+                outcome = "unsupported";
+                LOG.debugf("Workspace Binding '%s' does not report readiness, not waiting", bindingName);
+                return false;
+            }
+            outcome = ready ? "ready" : "not_ready";
+            return ready;
+        } catch (TimeoutException ex) {
+            outcome = "timeout";
+            LOG.info(String.format("Workspace Binding '%s' was not ready after %dms", bindingName, timeout.toMillis()));
+            return false;
+        } catch (ExecutionException ex) {
+            outcome = "error";
+            LOG.warn(String.format("Unable to watch Workspace Binding '%s'", bindingName), ex.getCause());
+            return false;
+        } catch (InterruptedException ex) {
+            outcome = "interrupted";
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            closeWatch(activeWatch.get());
+            future.cancel(true);
+            WorkspaceMetrics.recordTime(WorkspaceMetrics.READINESS_WAIT, Duration.ofNanos(System.nanoTime() - started),
+                    WorkspaceMetrics.TAG_OUTCOME, outcome);
+        }
+    }
+
+    /**
+     * Stops any watches that are still running.
+     */
+    public void close() {
+        watchExecutor.shutdownNow();
+    }
+
+    /**
+     * Watches the workspace binding until it reports ready or is deleted.
+     *
+     * @return true if the binding reported ready, false if it was deleted or
+     * the watch ended, or null if the binding does not report readiness
+     */
+    protected Boolean watchUntilReady(String namespace, String bindingName, Duration timeout,
+            AtomicReference<Watchable<DynamicKubernetesObject>> activeWatch) throws Exception {
+        ListOptions listOptions = new ListOptions();
+        listOptions.setFieldSelector(String.format("metadata.name=%s", bindingName));
+        listOptions.setTimeoutSeconds((int) Math.max(1L, timeout.toSeconds() + 1));
+        try (Watchable<DynamicKubernetesObject> watch = bindingStatusApi.watch(namespace, listOptions)) {
+            activeWatch.set(watch);
+            for (Watch.Response<DynamicKubernetesObject> event : watch) {
+                if ("DELETED".equals(event.type)) {
+                    return false;
+                }
+                if (event.object == null) {
+                    continue;
+                }
+                JsonObject binding = event.object.getRaw();
+                if (isReady(binding)) {
+                    return true;
+                }
+                if (!reportsReadiness(binding) && !isReconciling(binding)) {
+                    return null;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the raw representation of a workspace binding
+     * reports that its workspace is ready.
+     *
+     * @param binding The raw workspace binding
+     * @return true if the binding is ready
+     */
+    protected static boolean isReady(JsonObject binding) {
+        if (binding == null || !binding.has("status") || !binding.get("status").isJsonObject()) {
+            return false;
+        }
+
+        JsonObject status = binding.getAsJsonObject("status");
+        if (status.has("conditions") && status.get("conditions").isJsonArray()) {
+            for (JsonElement element : status.getAsJsonArray("conditions")) {
+                if (element.isJsonObject()) {
+                    JsonObject condition = element.getAsJsonObject();
+                    if (condition.has("type") && "Ready".equals(condition.get("type").getAsString())
+                            && condition.has("status") && "True".equals(condition.get("status").getAsString())) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return hasReplicas(status, "readyReplicas") || hasReplicas(status, "availableReplicas");
+    }
+
+    /**
+     * Determines whether the raw representation of a workspace binding
+     * carries any of the fields used to decide whether it is ready.
+     *
+     * @param binding The raw workspace binding
+     * @return true if the binding has a {@code Ready} condition, or a ready or
+     * available replica count
+     */
+    protected static boolean reportsReadiness(JsonObject binding) {
+        if (binding == null || !binding.has("status") || !binding.get("status").isJsonObject()) {
+            return false;
+        }
+
+        JsonObject status = binding.getAsJsonObject("status");
+        if (status.has("readyReplicas") || status.has("availableReplicas")) {
+            return true;
+        }
+        if (status.has("conditions") && status.get("conditions").isJsonArray()) {
+            for (JsonElement element : status.getAsJsonArray("conditions")) {
+                if (element.isJsonObject() && element.getAsJsonObject().has("type")
+                        && "Ready".equals(element.getAsJsonObject().get("type").getAsString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the controller of a workspace binding has reported
+     * a status for an earlier generation of the binding than the current
+     * one, such as the generation before the binding was scaled up.
+     *
+     * @param binding The raw workspace binding
+     * @return true if {@code status.observedGeneration} is behind
+     * {@code metadata.generation}
+     */
+    protected static boolean isReconciling(JsonObject binding) {
+        if (binding == null || !binding.has("status") || !binding.get("status").isJsonObject()
+                || !binding.has("metadata") || !binding.get("metadata").isJsonObject()) {
+            return false;
+        }
+
+        JsonObject status = binding.getAsJsonObject("status");
+        JsonObject metadata = binding.getAsJsonObject("metadata");
+        if (!status.has("observedGeneration") || !status.get("observedGeneration").isJsonPrimitive()
+                || !metadata.has("generation") || !metadata.get("generation").isJsonPrimitive()) {
+            return false;
+        }
+        return status.get("observedGeneration").getAsLong() < metadata.get("generation").getAsLong();
+    }
+
+    protected static boolean hasReplicas(JsonObject status, String field) {
+        return status.has(field) && status.get(field).isJsonPrimitive() && status.get(field).getAsInt() >= 1;
+    }
+
+    protected static void closeWatch(Watchable<DynamicKubernetesObject> watch) {
+        if (watch != null) {
+            try {
+                watch.close();
+            } catch (IOException ex) {
+                LOG.debug("Unable to close Workspace Binding watch", ex);
+            }
+        }
+    }
+}
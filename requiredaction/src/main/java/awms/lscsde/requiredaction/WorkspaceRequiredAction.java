@@ -1,9 +1,10 @@
 /**
  * A Keycloak required action provider for workspace selection functionality.
  * <p>
- * This class implements the RequiredActionFactory and RequiredActionProvider
- * interfaces to provide a custom authentication flow step that requires users
- * to select a workspace before accessing the system.
+ * This class implements the RequiredActionProvider interface to provide a
+ * custom authentication flow step that requires users to select a workspace
+ * before accessing the system. Instances are created for each session by the
+ * {@link WorkspaceRequiredActionFactory}.
  * <p>
  * The implementation manages workspace associations for users, stores workspace
  * metadata as user attributes, and coordinates with Kubernetes to manage
@@ -25,45 +26,32 @@
  * <li>Communicates with Kubernetes to set active workspace bindings</li>
  * </ul>
  *
- * @see RequiredActionFactory
+ * @see WorkspaceRequiredActionFactory
  * @see RequiredActionProvider
  */
 package awms.lscsde.requiredaction;
 
-import com.google.auto.service.AutoService;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
-import org.keycloak.Config;
 import org.keycloak.authentication.InitiatedActionSupport;
 import org.keycloak.authentication.RequiredActionContext;
-import org.keycloak.authentication.RequiredActionFactory;
 import org.keycloak.authentication.RequiredActionProvider;
 import org.keycloak.forms.login.LoginFormsProvider;
-import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.FormMessage;
 import org.keycloak.services.validation.Validation;
 import org.jboss.logging.Logger;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspace;
-import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
-import com.google.gson.Gson;
+import java.util.concurrent.CompletableFuture;
 import org.keycloak.events.EventBuilder;
-import java.util.concurrent.TimeUnit;
-import java.lang.InterruptedException;
 
 /**
  * A Required Action implementation that manages workspace binding for users.
  *
  * This class handles the process of assigning and validating workspace
- * information for user accounts. It implements both RequiredActionFactory and
- * RequiredActionProvider interfaces from Keycloak to register and process the
- * required action.
+ * information for user accounts. It implements the RequiredActionProvider
+ * interface from Keycloak to process the required action, and is registered
+ * by the WorkspaceRequiredActionFactory.
  *
  * The action is triggered when: 1. The user doesn't have complete workspace
  * information in their account 2. When accessing through Guacamole client with
@@ -74,13 +62,11 @@ import java.lang.InterruptedException;
  * information is stored in the user's attributes, and the Kubernetes client is
  * updated with the active workspace binding.
  *
- * This implementation uses a WorkspaceKubernetesClient to interact with
- * workspace resources and maintains several user attributes to track workspace
- * association.
+ * This implementation uses the WorkspaceKubernetesClient shared by the factory
+ * to interact with workspace resources and maintains several user attributes
+ * to track workspace association.
  */
-@AutoService(RequiredActionFactory.class)
-public class WorkspaceRequiredAction implements
-        RequiredActionFactory, RequiredActionProvider {
+public class WorkspaceRequiredAction implements RequiredActionProvider {
 
     private static final Logger LOG = Logger.getLogger(WorkspaceRequiredAction.class);
     public static final String WORKSPACE_BINDING = "workspace_binding";
@@ -90,7 +76,21 @@ public class WorkspaceRequiredAction implements
     public static final String WORKSPACE_ASSIGNED_SESSION = "workspace_assigned_session";
     public static final String PROVIDER_ID = "workspace";
     public static final String GUACAMOLE_CLIENT_NAME = "guacamole";
-    public WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceRequiredActionFactory factory;
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceActivationMemo activationMemo;
+    protected WorkspaceSelectionCache selectionCache;
+
+    /**
+     * @param factory The factory holding the workspace client and activation
+     * components shared between sessions
+     */
+    public WorkspaceRequiredAction(WorkspaceRequiredActionFactory factory) {
+        this.factory = factory;
+        this.workspaceClient = factory.getWorkspaceClient();
+        this.activationMemo = factory.getActivationMemo();
+        this.selectionCache = factory.getSelectionCache();
+    }
 
     @Override
     public InitiatedActionSupport initiatedActionSupport() {
@@ -100,34 +100,70 @@ public class WorkspaceRequiredAction implements
     /**
      * Evaluates the conditions that trigger the required action for the user.
      *
-     * This method checks various scenarios: 1. If any essential workspace
-     * attributes are missing from the user profile, the required action is
+     * The selection is read from the user as a single attribute, see
+     * {@link WorkspaceSelection}. This method checks various scenarios: 1. If
+     * the user has no complete workspace selection, the required action is
      * added to the user. 2. If the client is Guacamole, and the user has a
      * workspace session that doesn't match the current authentication session,
-     * the required action is triggered. 3. Otherwise, the workspace client is
-     * initialized and the active workspace binding is set for the user.
+     * the required action is triggered. 3. Otherwise, a selection held only in
+     * the individual attributes is migrated and the active workspace binding
+     * is set for the user. When
+     * asynchronous activation is enabled, the activation is queued and this
+     * method returns without waiting for it. Concurrent activations for the
+     * same user are coalesced into a single reconciliation, and activations
+     * already made within the same SSO session are skipped when the activation
+     * memo is enabled.
      *
      * @param context The required action context containing user and session
      * information
      */
     @Override
     public void evaluateTriggers(RequiredActionContext context) {
-        if (context.getUser().getFirstAttribute(WORKSPACE_ASSIGNED_SESSION) == null
-                || context.getUser().getFirstAttribute(WORKSPACE_NAME) == null
-                || context.getUser().getFirstAttribute(WORKSPACE_ID) == null
-                || context.getUser().getFirstAttribute(WORKSPACE_ID_FORMATTED) == null
-                || context.getUser().getFirstAttribute(WORKSPACE_BINDING) == null) {
-            context.getUser().addRequiredAction(PROVIDER_ID);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            evaluateSelection(context);
+            success = true;
+        } finally {
+            WorkspaceMetrics.recordTime(WorkspaceMetrics.REQUIRED_ACTION_PHASE, start, success, WorkspaceMetrics.TAG_PHASE, "evaluate_triggers");
+        }
+    }
+
+    /**
+     * Adds the required action or activates the stored selection, as
+     * described by {@link #evaluateTriggers(RequiredActionContext)}.
+     *
+     * @param context The required action context containing user and session
+     * information
+     */
+    protected void evaluateSelection(RequiredActionContext context) {
+        UserModel user = context.getUser();
+        WorkspaceSelection selection = WorkspaceSelection.read(user);
+        if (selection == null) {
+            user.addRequiredAction(PROVIDER_ID);
         } else if (context.getSession().getContext().getClient().getName().equals(GUACAMOLE_CLIENT_NAME)
-                && context.getUser().getFirstAttribute(WORKSPACE_ASSIGNED_SESSION) != null
-                && !context.getUser().getFirstAttribute(WORKSPACE_ASSIGNED_SESSION)
-                        .equals(context.getAuthenticationSession().getParentSession().getId())) {
-            context.getUser().addRequiredAction(PROVIDER_ID);
+                && !selection.getAssignedSession().equals(context.getAuthenticationSession().getParentSession().getId())) {
+            user.addRequiredAction(PROVIDER_ID);
         } else {
-            initialiseClient();
-            String workspaceBinding = context.getUser().getFirstAttribute(WORKSPACE_BINDING);
-            String username = context.getUser().getUsername();
-            workspaceClient.setActiveWorkspaceBindingForUser(workspaceBinding, username);
+            selection.migrate(user);
+            String workspaceBinding = selection.getBindingName();
+            String username = user.getUsername();
+            String sessionId = context.getAuthenticationSession().getParentSession().getId();
+            if (activationMemo != null && activationMemo.isActivated(sessionId, workspaceBinding)) {
+                LOG.debugf("Binding '%s' already activated for user '%s' in this session", workspaceBinding, username);
+                return;
+            }
+
+            CompletableFuture<WorkspaceActivationResult> activation = factory.activate(workspaceBinding, username);
+            if (activationMemo != null) {
+                activation = activation.thenApply(result -> {
+                    activationMemo.record(sessionId, result);
+                    return result;
+                });
+            }
+            if (!factory.isAsyncActivation()) {
+                activation.join();
+            }
         }
     }
 
@@ -152,10 +188,11 @@ public class WorkspaceRequiredAction implements
      * authentication.
      *
      * This method: 1. Extracts the workspace information from the form data 2.
-     * Validates the workspace name 3. Sets workspace attributes on the user
-     * profile 4. Removes the required action from user and session 5. Sets the
-     * active workspace binding for the user via workspace client 6. Completes
-     * the authentication process
+     * Validates the workspace name 3. Stores the selection on the user,
+     * writing only the attributes that changed 4. Removes the required action from user and session 5. Sets the
+     * active workspace binding for the user via workspace client 6. Waits, up
+     * to the configured readiness timeout, for the binding to report ready 7.
+     * Completes the authentication process
      *
      * @param context The required action context containing authentication
      * session and HTTP request data
@@ -163,6 +200,24 @@ public class WorkspaceRequiredAction implements
      */
     @Override
     public void processAction(RequiredActionContext context) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            applySelection(context);
+            success = true;
+        } finally {
+            WorkspaceMetrics.recordTime(WorkspaceMetrics.REQUIRED_ACTION_PHASE, start, success, WorkspaceMetrics.TAG_PHASE, "process_action");
+        }
+    }
+
+    /**
+     * Stores and activates the workspace selected on the form, as described
+     * by {@link #processAction(RequiredActionContext)}.
+     *
+     * @param context The required action context containing authentication
+     * session and HTTP request data
+     */
+    protected void applySelection(RequiredActionContext context) {
         EventBuilder eventBuilder = context.getEvent();
         MultivaluedMap<String, String> formData = context.getHttpRequest().getDecodedFormParameters();
         String boundWorkspace = formData.getFirst(WORKSPACE_NAME);
@@ -176,83 +231,46 @@ public class WorkspaceRequiredAction implements
         }
 
         UserModel user = context.getUser();
-        String workspaceId = String.format("%s\\%s", workspaceName, user.getUsername());
-        String workspaceIdFormatted = String.format("%s@%s", workspaceName, user.getUsername());
-        user.setSingleAttribute(WORKSPACE_BINDING, bindingName);
-        user.setSingleAttribute(WORKSPACE_NAME, workspaceName);
-        user.setSingleAttribute(WORKSPACE_ID, workspaceId);
-        user.setSingleAttribute(WORKSPACE_ID_FORMATTED, workspaceIdFormatted);
-        user.setSingleAttribute(WORKSPACE_ASSIGNED_SESSION,
+        WorkspaceSelection selection = new WorkspaceSelection(bindingName, workspaceName,
                 context.getAuthenticationSession().getParentSession().getId());
-        user.removeRequiredAction(PROVIDER_ID);
-        eventBuilder.detail(WORKSPACE_ID, workspaceId);
+        selection.write(user);
+        if (user.getRequiredActionsStream().anyMatch(PROVIDER_ID::equals)) {
+            user.removeRequiredAction(PROVIDER_ID);
+        }
+        eventBuilder.detail(WORKSPACE_ID, selection.getWorkspaceId(user.getUsername()));
         eventBuilder.detail(WORKSPACE_NAME, workspaceName);
         eventBuilder.detail(WORKSPACE_BINDING, bindingName);
-        workspaceClient.setActiveWorkspaceBindingForUser(bindingName, user.getUsername());
+        WorkspaceActivationResult result = factory.activate(bindingName, user.getUsername()).join();
+        if (activationMemo != null) {
+            activationMemo.record(context.getAuthenticationSession().getParentSession().getId(), result);
+        }
         context.getAuthenticationSession().removeRequiredAction(PROVIDER_ID);
-        try {
-            TimeUnit.SECONDS.sleep(3);
-        } catch (InterruptedException ex) {
-
+        if (workspaceClient != null) {
+            workspaceClient.waitForWorkspaceBindingReady(result.getWorkspaceBindingNamespace(), result.getWorkspaceBindingName());
         }
         context.success();
     }
 
-    @Override
-    public RequiredActionProvider create(KeycloakSession keycloakSession) {
-        return this;
-    }
-
-    @Override
-    public String getDisplayText() {
-        return "Select workspace";
-    }
-
-    @Override
-    public void init(Config.Scope scope) {
-    }
-
-    @Override
-    public void postInit(KeycloakSessionFactory keycloakSessionFactory) {
-    }
-
     @Override
     public void close() {
     }
 
-    @Override
-    public String getId() {
-        return PROVIDER_ID;
-    }
-
     private Response createForm(RequiredActionContext context) {
         return createForm(context, null);
     }
 
-    /**
-     * Initializes the WorkspaceKubernetesClient if it hasn't been initialized
-     * yet. Creates a new instance of WorkspaceKubernetesClient and assigns it
-     * to workspaceClient. Logs a message upon successful initialization. If
-     * initialization fails due to an IOException, the exception is logged.
-     */
-    private void initialiseClient() {
-        if (workspaceClient == null) {
-            try {
-                workspaceClient = new WorkspaceKubernetesClient();
-                LOG.info("Workspace Client Initialised");
-            } catch (IOException ex) {
-                LOG.error(ex);
-            }
-        }
-    }
-
     /**
      * Creates a form for selecting a workspace.
      *
-     * This method initializes the client, retrieves available workspaces for
-     * the user, and prepares the form for workspace selection. It converts the
-     * available workspaces into a JSON representation for use in the form
-     * template.
+     * This method retrieves available workspaces for the user, and prepares
+     * the form for workspace selection. It converts the available workspaces
+     * into a JSON representation for use in the form template. When the
+     * selection cache is enabled, the JSON rendered for the user previously is
+     * reused, so showing the form again makes no Kubernetes calls. If the
+     * workspace client could not be created, or the workspaces cannot be
+     * retrieved, the form is shown without any workspaces and with an
+     * error. The time taken is recorded as the
+     * {@code create_form} phase.
      *
      * @param context The required action context containing user information
      * and form provider
@@ -261,29 +279,23 @@ public class WorkspaceRequiredAction implements
      * @return Response containing the rendered form
      */
     private Response createForm(RequiredActionContext context, Consumer<LoginFormsProvider> formConsumer) {
-        initialiseClient();
-        String workspaceName = context.getUser().getFirstAttribute(WORKSPACE_NAME);
-        String username = context.getUser().getUsername();
-        List<BoundWorkspace> availableWorkspaces = workspaceClient.getAllWorkspacesForUser(username);
-        Gson gson = new Gson();
-        HashMap<String, String> availableWorkspacesHashMap = new HashMap<>();
-        for (BoundWorkspace boundWorkspace : availableWorkspaces) {
-            V1AnalyticsWorkspace workspace = boundWorkspace.getWorkspace();
-            V1AnalyticsWorkspaceBinding binding = boundWorkspace.getBinding();
-            if (workspace != null && binding != null) {
-                String name = String.format("%s:%s", workspace.getMetadata().getName(),
-                        binding.getMetadata().getName());
-                String displayName = workspace.getSpec().getDisplayName();
-                availableWorkspacesHashMap.put(name, displayName);
-            }
-        }
+        return WorkspaceMetrics.time(WorkspaceMetrics.REQUIRED_ACTION_PHASE, () -> renderForm(context, formConsumer),
+                WorkspaceMetrics.TAG_PHASE, "create_form");
+    }
 
-        String availableWorkspacesJson = gson.toJson(availableWorkspacesHashMap);
+    private Response renderForm(RequiredActionContext context, Consumer<LoginFormsProvider> formConsumer) {
+        WorkspaceSelection selection = WorkspaceSelection.read(context.getUser());
+        String workspaceName = selection != null ? selection.getWorkspaceName() : null;
+        String username = context.getUser().getUsername();
+        String availableWorkspacesJson = getAvailableWorkspacesJson(username);
 
         LoginFormsProvider form = context.form()
                 .setAttribute("username", username)
-                .setAttribute("available_workspaces", availableWorkspacesJson)
+                .setAttribute("available_workspaces", availableWorkspacesJson != null ? availableWorkspacesJson : "{}")
                 .setAttribute(WORKSPACE_NAME, workspaceName);
+        if (availableWorkspacesJson == null) {
+            form.addError(new FormMessage(WORKSPACE_NAME, "updateWorkspaceUnavailable"));
+        }
 
         if (formConsumer != null) {
             formConsumer.accept(form);
@@ -292,4 +304,24 @@ public class WorkspaceRequiredAction implements
         return form.createForm("update-workspace.ftl");
     }
 
+    /**
+     * @param username The username of the user
+     * @return The workspaces available to the user rendered as JSON, or null
+     * if they cannot be retrieved
+     */
+    private String getAvailableWorkspacesJson(String username) {
+        if (workspaceClient == null) {
+            LOG.warn(String.format("Unable to list workspaces for user '%s', the Workspace Client is unavailable", username));
+            return null;
+        }
+        try {
+            return selectionCache != null
+                    ? selectionCache.getAvailableWorkspacesJson(username, workspaceClient::getAllWorkspacesForUser)
+                    : WorkspaceSelectionCache.toJson(workspaceClient.getAllWorkspacesForUser(username));
+        } catch (IllegalStateException ex) {
+            LOG.warn(String.format("Unable to list workspaces for user '%s': %s", username, ex.getMessage()));
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,348 @@
+/**
+ * A Keycloak required action factory for workspace selection functionality.
+ * <p>
+ * This class registers the {@link WorkspaceRequiredAction} with Keycloak and
+ * owns the components shared by every instance of it, including the
+ * Kubernetes client, which are created once when the server starts and shut
+ * down when it stops.
+ *
+ * @see RequiredActionFactory
+ * @see WorkspaceRequiredAction
+ */
+package awms.lscsde.requiredaction;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.auto.service.AutoService;
+import org.jboss.logging.Logger;
+import org.keycloak.Config;
+import org.keycloak.authentication.RequiredActionFactory;
+import org.keycloak.authentication.RequiredActionProvider;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.services.scheduled.ClusterAwareScheduledTaskRunner;
+import org.keycloak.timer.TimerProvider;
+
+/**
+ * Creates a WorkspaceRequiredAction for each Keycloak session.
+ *
+ * The configuration is read from the SPI scope in {@link #init}, and the
+ * shared components are built in {@link #postInit}, before Keycloak reports
+ * that it is ready:
+ * <ul>
+ * <li>the WorkspaceKubernetesClient, optionally pre-warmed</li>
+ * <li>the activation coalescer, and the activation queue, memo, cluster-wide
+ * activation state, selection cache and idle reaper when they are
+ * enabled</li>
+ * </ul>
+ * They are released in {@link #close()} when Keycloak shuts down. Other
+ * extensions in this module obtain them from this factory through the
+ * session factory.
+ */
+@AutoService(RequiredActionFactory.class)
+public class WorkspaceRequiredActionFactory implements RequiredActionFactory {
+
+    private static final Logger LOG = Logger.getLogger(WorkspaceRequiredActionFactory.class);
+
+    protected WorkspaceClientConfig clientConfig = new WorkspaceClientConfig();
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceActivationQueue activationQueue;
+    protected WorkspaceActivationCoalescer activationCoalescer;
+    protected WorkspaceActivationMemo activationMemo;
+    protected WorkspaceActivationState activationState;
+    protected WorkspaceSelectionCache selectionCache;
+    protected WorkspaceIdleReaper reaper;
+    protected KeycloakSessionFactory sessionFactory;
+
+    @Override
+    public RequiredActionProvider create(KeycloakSession keycloakSession) {
+        return new WorkspaceRequiredAction(this);
+    }
+
+    @Override
+    public String getDisplayText() {
+        return "Select workspace";
+    }
+
+    /**
+     * Reads the configuration of the workspace client from the SPI scope of
+     * this provider.
+     *
+     * @param scope The configuration scope of the provider
+     */
+    @Override
+    public void init(Config.Scope scope) {
+        clientConfig = WorkspaceClientConfig.fromScope(scope);
+    }
+
+    /**
+     * Creates the workspace client and the activation components. Sets up the
+     * cluster-wide activation state when it is enabled, using the Infinispan
+     * cache container of Keycloak, schedules the idle reaper on the Keycloak
+     * timer and pre-warms the client when they are enabled. The reaper and
+     * the label backfill are also scheduled on the Keycloak timer when they
+     * are enabled, each running on a single node of the cluster at each
+     * interval.
+     *
+     * If the client cannot be created the error is logged and the required
+     * action is left without a client. Activations then fail, and the
+     * selection form is shown with an error, rather than the login failing.
+     *
+     * @param keycloakSessionFactory The session factory of the server
+     */
+    @Override
+    public void postInit(KeycloakSessionFactory keycloakSessionFactory) {
+        sessionFactory = keycloakSessionFactory;
+        if (clientConfig.isClusterStateEnabled()) {
+            KeycloakModelUtils.runJobInTransaction(keycloakSessionFactory, session -> {
+                activationState = WorkspaceActivationState.fromConnectionProvider(session.getProvider(InfinispanConnectionProvider.class), clientConfig);
+            });
+        }
+
+        activationCoalescer = new WorkspaceActivationCoalescer(this::startActivation);
+        try {
+            workspaceClient = new WorkspaceKubernetesClient(clientConfig);
+        } catch (IOException ex) {
+            LOG.error("Unable to create the Workspace Client", ex);
+            return;
+        }
+
+        if (clientConfig.isAsyncActivationEnabled()) {
+            activationQueue = new WorkspaceActivationQueue(this::activateBinding, clientConfig.getActivationWorkers(), clientConfig.getActivationQueueCapacity());
+        }
+        if (clientConfig.isActivationMemoEnabled()) {
+            activationMemo = new WorkspaceActivationMemo(clientConfig.getActivationMemoMaxEntries(), clientConfig.getActivationMemoTtlSeconds(), workspaceClient::isWorkspaceBindingActive);
+        }
+        if (clientConfig.isSelectionCacheEnabled()) {
+            selectionCache = new WorkspaceSelectionCache(clientConfig.getSelectionCacheMaxEntries(), clientConfig.getSelectionCacheTtlSeconds());
+            workspaceClient.addBindingChangeListener(binding -> selectionCache.invalidateBinding(binding, clientConfig.getUsernameLabel()));
+            workspaceClient.addWorkspaceChangeListener(selectionCache::invalidateWorkspace);
+        }
+        LOG.info("Workspace Client Initialised");
+
+        if (clientConfig.isReaperEnabled()) {
+            reaper = new WorkspaceIdleReaper(workspaceClient, activationState, clientConfig);
+            long intervalMillis = TimeUnit.SECONDS.toMillis(clientConfig.getReaperIntervalSeconds());
+            KeycloakModelUtils.runJobInTransaction(keycloakSessionFactory, session -> {
+                session.getProvider(TimerProvider.class).schedule(
+                        new ClusterAwareScheduledTaskRunner(keycloakSessionFactory, reaper, intervalMillis),
+                        intervalMillis, WorkspaceIdleReaper.TASK_NAME);
+            });
+            LOG.info(String.format("Idle Workspace reaper scheduled every %ds%s", clientConfig.getReaperIntervalSeconds(), clientConfig.isReaperDryRun() ? ", dry run" : ""));
+        }
+
+        WorkspaceLabelBackfill labelBackfill = workspaceClient.getLabelBackfill();
+        if (labelBackfill != null) {
+            long intervalMillis = TimeUnit.SECONDS.toMillis(clientConfig.getLabelBackfillIntervalSeconds());
+            KeycloakModelUtils.runJobInTransaction(keycloakSessionFactory, session -> {
+                session.getProvider(TimerProvider.class).schedule(
+                        new ClusterAwareScheduledTaskRunner(keycloakSessionFactory, labelBackfill, intervalMillis),
+                        intervalMillis, WorkspaceLabelBackfill.TASK_NAME);
+            });
+            LOG.info(String.format("Workspace Binding label backfill scheduled every %ds", clientConfig.getLabelBackfillIntervalSeconds()));
+        }
+
+        if (clientConfig.isPrewarmEnabled()) {
+            try {
+                boolean synced = workspaceClient.prewarm(Duration.ofSeconds(clientConfig.getPrewarmTimeoutSeconds()));
+                LOG.info(String.format("Workspace Client pre-warmed, caches synced: %s", synced));
+            } catch (RuntimeException ex) {
+                LOG.warn("Unable to pre-warm the Workspace Client", ex);
+            }
+        }
+    }
+
+    /**
+     * Cancels the idle reaper and the label backfill, and stops the
+     * activation queue and the workspace client when Keycloak shuts down.
+     */
+    @Override
+    public void close() {
+        if (reaper != null) {
+            cancelTask(WorkspaceIdleReaper.TASK_NAME);
+            reaper.stop();
+        }
+        if (workspaceClient != null && workspaceClient.getLabelBackfill() != null) {
+            cancelTask(WorkspaceLabelBackfill.TASK_NAME);
+        }
+        if (activationQueue != null) {
+            activationQueue.close();
+        }
+        if (workspaceClient != null) {
+            workspaceClient.close();
+        }
+    }
+
+    protected void cancelTask(String taskName) {
+        if (sessionFactory == null) {
+            return;
+        }
+        try {
+            KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                session.getProvider(TimerProvider.class).cancelTask(taskName);
+            });
+        } catch (RuntimeException ex) {
+            LOG.warn(String.format("Unable to cancel the scheduled task '%s'", taskName), ex);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return WorkspaceRequiredAction.PROVIDER_ID;
+    }
+
+    public WorkspaceClientConfig getClientConfig() {
+        return clientConfig;
+    }
+
+    /**
+     * @return The shared workspace client, or null if it could not be created
+     */
+    public WorkspaceKubernetesClient getWorkspaceClient() {
+        return workspaceClient;
+    }
+
+    /**
+     * @return The activation memo, or null if it is disabled
+     */
+    public WorkspaceActivationMemo getActivationMemo() {
+        return activationMemo;
+    }
+
+    /**
+     * @return The cache of rendered workspace selections, or null if it is
+     * disabled
+     */
+    public WorkspaceSelectionCache getSelectionCache() {
+        return selectionCache;
+    }
+
+    /**
+     * @return The cluster-wide activation state, or null if it is disabled
+     */
+    public WorkspaceActivationState getActivationState() {
+        return activationState;
+    }
+
+    /**
+     * @return true if activations started by {@link #activate} run on the
+     * activation queue rather than on the calling thread
+     */
+    public boolean isAsyncActivation() {
+        return activationQueue != null;
+    }
+
+    /**
+     * Activates a workspace binding for a user through the activation
+     * coalescer, so that concurrent activations for the same user are
+     * reconciled once.
+     *
+     * @param workspaceBinding The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose bindings are reconciled
+     * @return A future completing with the result of the activation, which
+     * has failed if the workspace client could not be created
+     */
+    public CompletableFuture<WorkspaceActivationResult> activate(String workspaceBinding, String username) {
+        if (workspaceClient == null) {
+            WorkspaceActivationResult result = new WorkspaceActivationResult(username, workspaceBinding);
+            result.addFailed(workspaceBinding, "Workspace Client unavailable");
+            return CompletableFuture.completedFuture(result);
+        }
+        return activationCoalescer.activate(workspaceBinding, username);
+    }
+
+    /**
+     * Starts the activation of a workspace binding for a user, on the
+     * activation queue when asynchronous activation is enabled or on the
+     * calling thread otherwise. Used by the activation coalescer.
+     *
+     * @param workspaceBinding The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose bindings are reconciled
+     * @return A future completing with the result of the activation
+     */
+    protected CompletableFuture<WorkspaceActivationResult> startActivation(String workspaceBinding, String username) {
+        if (activationQueue != null) {
+            return activationQueue.enqueue(workspaceBinding, username);
+        }
+        return CompletableFuture.completedFuture(activateBinding(workspaceBinding, username));
+    }
+
+    /**
+     * Activates a workspace binding for a user, consulting the cluster-wide
+     * activation state when it is enabled.
+     *
+     * If the binding is recorded as activated for the user by any node, and
+     * the binding cache confirms that it is scaled up, nothing is done.
+     * Otherwise the activation lock of the user is taken before reconciling.
+     * While another node holds the lock this node waits, up to the configured
+     * lock wait, and if that node recorded the activation of the same binding
+     * in the meantime its result is used. If the lock is not released in time
+     * the activation fails rather than racing the other node.
+     *
+     * @param workspaceBinding The name of the workspace binding to set as
+     * active
+     * @param username The username of the user whose bindings are reconciled
+     * @return The result of the activation
+     */
+    protected WorkspaceActivationResult activateBinding(String workspaceBinding, String username) {
+        if (activationState == null) {
+            return workspaceClient.setActiveWorkspaceBindingForUser(workspaceBinding, username);
+        }
+
+        WorkspaceActivationResult result = new WorkspaceActivationResult(username, workspaceBinding);
+        WorkspaceActivationState.ActiveBinding active = activationState.getActiveBinding(username);
+        if (active != null && workspaceBinding.equals(active.getBindingName())) {
+            if (Boolean.TRUE.equals(workspaceClient.isWorkspaceBindingActive(active.getNamespace(), workspaceBinding))) {
+                LOG.info(String.format("Binding '%s' already activated for user '%s' by node %s", workspaceBinding, username, active.getNodeId()));
+                result.setWorkspaceBindingNamespace(active.getNamespace());
+                return result;
+            }
+            LOG.debugf("Binding '%s' recorded as active for user '%s' but not confirmed scaled up, reconciling", workspaceBinding, username);
+        }
+
+        long waitStarted = System.currentTimeMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(clientConfig.getClusterLockWaitMillis());
+        boolean contended = false;
+        while (!activationState.tryLock(username, workspaceBinding)) {
+            if (!contended) {
+                LOG.debugf("Waiting for the activation of binding '%s' for user '%s' by another node", activationState.getLockedBinding(username), username);
+                contended = true;
+            }
+            if (System.nanoTime() > deadline) {
+                LOG.warn(String.format("Timed out waiting for the activation lock of user '%s'", username));
+                result.addFailed(workspaceBinding, "Timed out waiting for the activation lock");
+                return result;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                result.addFailed(workspaceBinding, "Interrupted waiting for the activation lock");
+                return result;
+            }
+        }
+
+        try {
+            if (contended) {
+                active = activationState.getActiveBinding(username);
+                if (active != null && workspaceBinding.equals(active.getBindingName()) && active.getActivatedAt() >= waitStarted) {
+                    LOG.info(String.format("Binding '%s' activated for user '%s' by node %s", workspaceBinding, username, active.getNodeId()));
+                    result.setWorkspaceBindingNamespace(active.getNamespace());
+                    return result;
+                }
+            }
+            result = workspaceClient.setActiveWorkspaceBindingForUser(workspaceBinding, username);
+            activationState.recordActivation(username, result);
+            return result;
+        } finally {
+            activationState.unlock(username, workspaceBinding);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Represents the workspace a user has selected.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} and the other
+ * extensions in this module so that the selection is stored on the user, and
+ * read back, as a single attribute rather than one attribute per field.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.SerializedName;
+import org.jboss.logging.Logger;
+import org.keycloak.models.UserModel;
+
+/**
+ * The selected binding, workspace and the session it was selected in.
+ *
+ * The selection is stored as compact JSON in the {@code workspace_selection}
+ * attribute, which is the only attribute read once it is present. Of the
+ * individual attributes used before it, only those protocol mappers use are
+ * still written, {@link WorkspaceRequiredAction#WORKSPACE_NAME},
+ * {@link WorkspaceRequiredAction#WORKSPACE_ID} and
+ * {@link WorkspaceRequiredAction#WORKSPACE_ID_FORMATTED}, and only when their
+ * value changes. The workspace id attributes are derived from the workspace
+ * and username.
+ *
+ * Users without the single attribute are read from the individual attributes,
+ * and are migrated once by {@link #migrate(UserModel)}, which writes the
+ * single attribute and removes the binding and session attributes that are no
+ * longer maintained.
+ */
+public class WorkspaceSelection {
+
+    public static final String ATTRIBUTE = "workspace_selection";
+    protected static final Gson GSON = new Gson();
+    private static final Logger LOG = Logger.getLogger(WorkspaceSelection.class);
+
+    @SerializedName("binding")
+    protected String bindingName;
+    @SerializedName("workspace")
+    protected String workspaceName;
+    @SerializedName("session")
+    protected String assignedSession;
+    protected transient boolean legacy = false;
+
+    public WorkspaceSelection(String bindingName, String workspaceName, String assignedSession) {
+        this.bindingName = bindingName;
+        this.workspaceName = workspaceName;
+        this.assignedSession = assignedSession;
+    }
+
+    /**
+     * Reads the selection of a user, from the single attribute if present, or
+     * from the individual attributes of a user who has not been migrated.
+     *
+     * @param user The user
+     * @return The selection, or null if the user has not selected a workspace
+     * or any part of it is missing
+     */
+    public static WorkspaceSelection read(UserModel user) {
+        String value = user.getFirstAttribute(ATTRIBUTE);
+        if (value != null) {
+            try {
+                WorkspaceSelection selection = GSON.fromJson(value, WorkspaceSelection.class);
+                return selection != null && selection.isComplete() ? selection : null;
+            } catch (JsonSyntaxException ex) {
+                LOG.warn(String.format("Ignoring malformed %s attribute of user '%s'", ATTRIBUTE, user.getUsername()));
+            }
+        }
+
+        if (user.getFirstAttribute(WorkspaceRequiredAction.WORKSPACE_ID) == null
+                || user.getFirstAttribute(WorkspaceRequiredAction.WORKSPACE_ID_FORMATTED) == null) {
+            return null;
+        }
+        WorkspaceSelection selection = new WorkspaceSelection(
+                user.getFirstAttribute(WorkspaceRequiredAction.WORKSPACE_BINDING),
+                user.getFirstAttribute(WorkspaceRequiredAction.WORKSPACE_NAME),
+                user.getFirstAttribute(WorkspaceRequiredAction.WORKSPACE_ASSIGNED_SESSION));
+        selection.legacy = true;
+        return selection.isComplete() ? selection : null;
+    }
+
+    /**
+     * Stores the selection on a user. The single attribute is always written,
+     * the individual attributes read by protocol mappers only where their
+     * value differs, and any binding or session attribute left from before
+     * the user was migrated is removed.
+     *
+     * @param user The user
+     */
+    public void write(UserModel user) {
+        user.setSingleAttribute(ATTRIBUTE, toJson());
+        setIfChanged(user, WorkspaceRequiredAction.WORKSPACE_NAME, workspaceName);
+        setIfChanged(user, WorkspaceRequiredAction.WORKSPACE_ID, getWorkspaceId(user.getUsername()));
+        setIfChanged(user, WorkspaceRequiredAction.WORKSPACE_ID_FORMATTED, getWorkspaceIdFormatted(user.getUsername()));
+        removeUnmaintained(user);
+        legacy = false;
+    }
+
+    /**
+     * Writes the single attribute for a selection read from the individual
+     * attributes, and removes the individual attributes which are no longer
+     * maintained. Does nothing otherwise.
+     *
+     * @param user The user the selection was read from
+     */
+    public void migrate(UserModel user) {
+        if (legacy) {
+            LOG.info(String.format("Migrating the workspace selection of user '%s' to the %s attribute", user.getUsername(), ATTRIBUTE));
+            user.setSingleAttribute(ATTRIBUTE, toJson());
+            removeUnmaintained(user);
+            legacy = false;
+        }
+    }
+
+    public String getBindingName() {
+        return bindingName;
+    }
+
+    public String getWorkspaceName() {
+        return workspaceName;
+    }
+
+    public String getAssignedSession() {
+        return assignedSession;
+    }
+
+    /**
+     * @param username The username of the user
+     * @return The workspace id, {@code workspace\username}
+     */
+    public String getWorkspaceId(String username) {
+        return String.format("%s\\%s", workspaceName, username);
+    }
+
+    /**
+     * @param username The username of the user
+     * @return The formatted workspace id, {@code workspace@username}
+     */
+    public String getWorkspaceIdFormatted(String username) {
+        return String.format("%s@%s", workspaceName, username);
+    }
+
+    /**
+     * @return true if the selection was read from the individual attributes
+     * and has not been migrated
+     */
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    public String toJson() {
+        return GSON.toJson(this);
+    }
+
+    /**
+     * Removes the binding and session attributes if present, which are only
+     * held in the single attribute once a user has been migrated and would
+     * otherwise be left stale.
+     *
+     * @param user The user
+     */
+    protected static void removeUnmaintained(UserModel user) {
+        for (String name : new String[]{WorkspaceRequiredAction.WORKSPACE_BINDING, WorkspaceRequiredAction.WORKSPACE_ASSIGNED_SESSION}) {
+            if (user.getFirstAttribute(name) != null) {
+                user.removeAttribute(name);
+            }
+        }
+    }
+
+    protected boolean isComplete() {
+        return bindingName != null && workspaceName != null && assignedSession != null;
+    }
+
+    protected static void setIfChanged(UserModel user, String name, String value) {
+        if (!Objects.equals(user.getFirstAttribute(name), value)) {
+            user.setSingleAttribute(name, value);
+        }
+    }
+}
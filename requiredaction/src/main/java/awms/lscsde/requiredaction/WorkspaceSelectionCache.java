@@ -0,0 +1,217 @@
+/**
+ * Caches the workspace selection offered to each user.
+ *
+ * <p>
+ * This class is used by the {@link WorkspaceRequiredAction} so that showing
+ * the workspace selection form again, for example after a validation error,
+ * does not repeat the Kubernetes lookups or the JSON serialisation.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import com.google.gson.Gson;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspace;
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+
+/**
+ * Holds the rendered {@code available_workspaces} JSON of each user, bounded
+ * by size and age.
+ *
+ * An entry is removed as soon as one of the user's bindings, or one of the
+ * workspaces it references, is added, changed or deleted. This requires the
+ * binding and workspace caches to be enabled, as changes are observed through
+ * their informers. Without them, changes are picked up when the entry
+ * expires.
+ *
+ * Entries are keyed by the username as sanitised for the username label, so
+ * that a binding identified only by its label removes its user's entry
+ * directly. Each entry also records its username, and an entry for another
+ * username sanitised to the same label is treated as absent. The users of
+ * each workspace are indexed, so a workspace change only removes the entries
+ * that include it.
+ *
+ * A lookup which is overtaken by a change to the user's bindings, or to any
+ * workspace, is returned but not cached, so a selection rendered from state
+ * read before a change is never held after it. Changes are tracked by a
+ * generation per group of users, so an unrelated change in the same group can
+ * also prevent a lookup from being cached.
+ */
+public class WorkspaceSelectionCache {
+
+    protected static final Gson GSON = new Gson();
+    protected static final int GENERATION_STRIPES = 1024;
+
+    protected ExpiringCache<String, Selection> selections;
+    protected Map<String, Set<String>> labelsByWorkspace = new HashMap<String, Set<String>>();
+    protected AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES + 1);
+
+    /**
+     * @param maxEntries The maximum number of users held
+     * @param ttlSeconds The time in seconds a selection is held
+     */
+    public WorkspaceSelectionCache(int maxEntries, long ttlSeconds) {
+        selections = new ExpiringCache<String, Selection>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Retrieves the available workspaces JSON of a user, looking up and
+     * rendering their workspaces if it is not held.
+     *
+     * @param username The username of the user
+     * @param lookup Looks up the workspaces bound to a user
+     * @return The available workspaces JSON
+     */
+    public String getAvailableWorkspacesJson(String username, Function<String, List<BoundWorkspace>> lookup) {
+        String label = WorkspaceKubernetesClient.usernameToLabel(username);
+        Selection selection = selections.get(label);
+        if (selection != null && username.equals(selection.username)) {
+            return selection.json;
+        }
+
+        int stripe = stripe(label);
+        long userGeneration = generations.get(stripe);
+        long workspaceGeneration = generations.get(GENERATION_STRIPES);
+        selection = render(username, lookup.apply(username));
+        synchronized (this) {
+            if (generations.get(stripe) == userGeneration && generations.get(GENERATION_STRIPES) == workspaceGeneration) {
+                unindex(label, selections.get(label));
+                selections.put(label, selection);
+                for (String workspaceKey : selection.workspaceKeys) {
+                    labelsByWorkspace.computeIfAbsent(workspaceKey, key -> new HashSet<String>()).add(label);
+                }
+            }
+        }
+        return selection.json;
+    }
+
+    /**
+     * Removes the selection of a user.
+     *
+     * @param username The username of the user
+     */
+    public void invalidateUser(String username) {
+        invalidateLabel(WorkspaceKubernetesClient.usernameToLabel(username));
+    }
+
+    /**
+     * Removes the selection of the user a binding belongs to, identified by
+     * either its spec.username or its username label.
+     *
+     * @param binding The binding that changed
+     * @param usernameLabel The label key holding the sanitised username
+     */
+    public void invalidateBinding(V1AnalyticsWorkspaceBinding binding, String usernameLabel) {
+        if (binding.getSpec() != null && binding.getSpec().getUsername() != null) {
+            invalidateUser(binding.getSpec().getUsername());
+        }
+        String labelValue = binding.getMetadata() != null && binding.getMetadata().getLabels() != null
+                ? binding.getMetadata().getLabels().get(usernameLabel)
+                : null;
+        if (labelValue != null) {
+            invalidateLabel(labelValue);
+        }
+    }
+
+    /**
+     * Removes the selections which include a workspace.
+     *
+     * @param workspace The workspace that changed
+     */
+    public synchronized void invalidateWorkspace(V1AnalyticsWorkspace workspace) {
+        generations.incrementAndGet(GENERATION_STRIPES);
+        Set<String> labels = labelsByWorkspace.remove(workspaceKey(workspace.getMetadata().getNamespace(), workspace.getMetadata().getName()));
+        if (labels != null) {
+            for (String label : labels) {
+                invalidateLabel(label);
+            }
+        }
+    }
+
+    /**
+     * Removes the selection held under a username label, and prevents any
+     * lookup already in progress for it from being cached.
+     *
+     * @param label The username as sanitised for the username label
+     */
+    protected synchronized void invalidateLabel(String label) {
+        generations.incrementAndGet(stripe(label));
+        unindex(label, selections.get(label));
+        selections.remove(label);
+    }
+
+    protected void unindex(String label, Selection selection) {
+        if (selection == null) {
+            return;
+        }
+        for (String workspaceKey : selection.workspaceKeys) {
+            Set<String> labels = labelsByWorkspace.get(workspaceKey);
+            if (labels != null) {
+                labels.remove(label);
+                if (labels.isEmpty()) {
+                    labelsByWorkspace.remove(workspaceKey);
+                }
+            }
+        }
+    }
+
+    protected static int stripe(String label) {
+        return Math.floorMod(label.hashCode(), GENERATION_STRIPES);
+    }
+
+    /**
+     * Converts the workspaces bound to a user into the available workspaces
+     * JSON, a map of {@code workspace:binding} to the display name of the
+     * workspace.
+     *
+     * @param availableWorkspaces The workspaces bound to the user
+     * @return The JSON
+     */
+    public static String toJson(List<BoundWorkspace> availableWorkspaces) {
+        return render(null, availableWorkspaces).json;
+    }
+
+    protected static Selection render(String username, List<BoundWorkspace> availableWorkspaces) {
+        HashMap<String, String> availableWorkspacesHashMap = new HashMap<>();
+        Set<String> workspaceKeys = new HashSet<>();
+        for (BoundWorkspace boundWorkspace : availableWorkspaces) {
+            V1AnalyticsWorkspace workspace = boundWorkspace.getWorkspace();
+            V1AnalyticsWorkspaceBinding binding = boundWorkspace.getBinding();
+            if (workspace != null && binding != null) {
+                String name = String.format("%s:%s", workspace.getMetadata().getName(),
+                        binding.getMetadata().getName());
+                String displayName = workspace.getSpec().getDisplayName();
+                availableWorkspacesHashMap.put(name, displayName);
+                workspaceKeys.add(workspaceKey(workspace.getMetadata().getNamespace(), workspace.getMetadata().getName()));
+            }
+        }
+        return new Selection(username, GSON.toJson(availableWorkspacesHashMap), workspaceKeys);
+    }
+
+    protected static String workspaceKey(String namespace, String name) {
+        return String.format("%s/%s", namespace, name);
+    }
+
+    /**
+     * The rendered JSON of a user along with the workspaces it includes.
+     */
+    protected static class Selection {
+
+        protected final String username;
+        protected final String json;
+        protected final Set<String> workspaceKeys;
+
+        protected Selection(String username, String json, Set<String> workspaceKeys) {
+            this.username = username;
+            this.json = json;
+            this.workspaceKeys = workspaceKeys;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * An in-process stand-in for the Kubernetes API server.
+ *
+ * <p>
+ * This class is installed on the HTTP client of a
+ * {@link WorkspaceKubernetesClient} so that the client can be tested and
+ * measured without a cluster, and without the noise of a network. It is
+ * shared with the benchmarks module through the test jar.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonObject;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+/**
+ * An OkHttp interceptor answering the {@code xlscsde.nhs.uk/v1} endpoints used
+ * by the workspace client from a synthetic data set, without making any
+ * network calls.
+ *
+ * The data set holds a number of bindings in a single namespace, spread
+ * evenly between users so that each user has the same number of bindings,
+ * each referencing a different workspace. Every binding carries the username
+ * label. The following requests are answered:
+ * <ul>
+ * <li>LIST of bindings, filtered by label selector and paged with the limit
+ * and continue parameters</li>
+ * <li>LIST of workspaces</li>
+ * <li>PATCH of a binding's replica count, which is retained</li>
+ * </ul>
+ * Anything else is answered with 404. The number of requests of each verb
+ * and the bytes sent and received are counted. Every answer can be delayed,
+ * to stand in for a slow API server.
+ *
+ * Requests can also be answered through {@link #answer}, for example by a
+ * mock web server.
+ */
+public class FakeKubernetesApi implements Interceptor {
+
+    public static final String NAMESPACE = "analytics";
+    public static final String API_VERSION = "xlscsde.nhs.uk/v1";
+    protected static final MediaType JSON = MediaType.get("application/json");
+    protected static final Pattern REPLICAS_PATCH = Pattern.compile("\"path\"\\s*:\\s*\"/spec/replicas\"\\s*,\\s*\"value\"\\s*:\\s*(\\d+)");
+
+    protected String usernameLabel;
+    protected int userCount;
+    protected List<Binding> bindings = new ArrayList<Binding>();
+    protected Map<String, List<Binding>> bindingsByLabel = new HashMap<String, List<Binding>>();
+    protected Map<String, Binding> bindingsByName = new HashMap<String, Binding>();
+    protected List<String> workspaces = new ArrayList<String>();
+    protected Map<String, AtomicLong> requests = new ConcurrentHashMap<String, AtomicLong>();
+    protected AtomicLong bytesSent = new AtomicLong();
+    protected AtomicLong bytesReceived = new AtomicLong();
+    protected volatile long latencyMillis = 0L;
+
+    /**
+     * @param bindingCount The total number of bindings
+     * @param bindingsPerUser The number of bindings of each user
+     * @param usernameLabel The label key holding the sanitised username
+     */
+    public FakeKubernetesApi(int bindingCount, int bindingsPerUser, String usernameLabel) {
+        this.usernameLabel = usernameLabel;
+        int perUser = Math.max(1, Math.min(bindingsPerUser, bindingCount));
+        userCount = Math.max(1, bindingCount / perUser);
+        for (int i = 0; i < bindingCount; i++) {
+            String username = username(Math.min(i / perUser, userCount - 1));
+            Binding binding = new Binding(String.format("binding-%d", i), username, workspaceName(i % perUser));
+            bindings.add(binding);
+            bindingsByName.put(binding.name, binding);
+            bindingsByLabel.computeIfAbsent(WorkspaceKubernetesClient.usernameToLabel(username), key -> new ArrayList<Binding>()).add(binding);
+        }
+        for (int i = 0; i < perUser; i++) {
+            workspaces.add(renderWorkspace(workspaceName(i)));
+        }
+    }
+
+    /**
+     * @param index The index of the user, from 0 to {@link #getUserCount()}
+     * @return The username of the user
+     */
+    public static String username(int index) {
+        return String.format("user%d", index);
+    }
+
+    protected static String workspaceName(int index) {
+        return String.format("workspace-%d", index);
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * @param username The username of a user
+     * @return The names of the user's bindings
+     */
+    public List<String> getBindingNames(String username) {
+        List<String> names = new ArrayList<String>();
+        for (Binding binding : bindingsByLabel.getOrDefault(WorkspaceKubernetesClient.usernameToLabel(username), List.of())) {
+            names.add(binding.name);
+        }
+        return names;
+    }
+
+    /**
+     * @return The number of requests answered, keyed by verb
+     */
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        requests.forEach((verb, count) -> counts.put(verb, count.get()));
+        return counts;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @param latencyMillis The time each request is held for after it is
+     * counted and before it is answered
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String requestBody = null;
+        if (request.body() != null) {
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            requestBody = buffer.readUtf8();
+        }
+
+        Answer answer = answer(request.method(), request.url(), requestBody);
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(answer.code())
+                .message(answer.code() == 200 ? "OK" : "Not Found")
+                .body(ResponseBody.create(answer.body(), JSON))
+                .build();
+    }
+
+    /**
+     * Answers a request to the API, counting it, after the configured
+     * latency. If the wait is interrupted, the answer is returned early with
+     * the interrupt status of the thread set.
+     *
+     * @param method The HTTP method of the request
+     * @param url The URL of the request
+     * @param requestBody The body of the request, or null if it has none
+     * @return The status code and body of the response
+     */
+    public Answer answer(String method, HttpUrl url, String requestBody) {
+        if (requestBody != null) {
+            bytesReceived.addAndGet(requestBody.length());
+        }
+        List<String> segments = url.pathSegments();
+        String resource = segments.get(segments.size() - 1);
+        if (segments.size() > 1 && bindingsByName.containsKey(resource)) {
+            resource = segments.get(segments.size() - 2);
+        }
+
+        String body;
+        if ("GET".equals(method) && "analyticsworkspacebindings".equals(resource)) {
+            count("list");
+            body = listBindings(url.queryParameter("labelSelector"), url.queryParameter("limit"), url.queryParameter("continue"));
+        } else if ("GET".equals(method) && "analyticsworkspaces".equals(resource)) {
+            count("list");
+            body = renderList("AnalyticsWorkspaceList", workspaces, null);
+        } else if ("PATCH".equals(method) && "analyticsworkspacebindings".equals(resource)) {
+            count("patch");
+            body = patchBinding(bindingsByName.get(segments.get(segments.size() - 1)), requestBody);
+        } else {
+            count(method.toLowerCase());
+            body = null;
+        }
+
+        Answer answer = body != null
+                ? new Answer(200, body)
+                : new Answer(404, "{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"status\":\"Failure\",\"reason\":\"NotFound\",\"code\":404}");
+        bytesSent.addAndGet(answer.body().length());
+        if (latencyMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return answer;
+    }
+
+    protected void count(String verb) {
+        requests.computeIfAbsent(verb, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Lists the bindings matching a label selector. Only selectors made up of
+     * the username label, either {@code label=value} or {@code !label}, are
+     * understood, anything else matches every binding.
+     *
+     * @param labelSelector The label selector, or null for none
+     * @param limit The page size, or null for a single page
+     * @param continueToken The offset of the page, or null for the first
+     * @return The rendered page
+     */
+    protected String listBindings(String labelSelector, String limit, String continueToken) {
+        List<Binding> matching = bindings;
+        if (labelSelector != null) {
+            for (String term : labelSelector.split(",")) {
+                if (term.equals(String.format("!%s", usernameLabel))) {
+                    matching = List.of();
+                } else if (term.startsWith(String.format("%s=", usernameLabel))) {
+                    matching = bindingsByLabel.getOrDefault(term.substring(usernameLabel.length() + 1), List.of());
+                }
+            }
+        }
+
+        int from = continueToken != null && !continueToken.isEmpty() ? Integer.parseInt(continueToken) : 0;
+        int to = limit != null ? Math.min(matching.size(), from + Integer.parseInt(limit)) : matching.size();
+        List<String> items = new ArrayList<String>(to - from);
+        for (Binding binding : matching.subList(from, to)) {
+            items.add(binding.json);
+        }
+        return renderList("AnalyticsWorkspaceBindingList", items, to < matching.size() ? String.valueOf(to) : null);
+    }
+
+    protected String patchBinding(Binding binding, String requestBody) {
+        if (binding == null || requestBody == null) {
+            return null;
+        }
+        Matcher matcher = REPLICAS_PATCH.matcher(requestBody);
+        if (matcher.find()) {
+            binding.setReplicas(Integer.parseInt(matcher.group(1)));
+        }
+        return binding.json;
+    }
+
+    protected static String renderList(String kind, List<String> items, String continueToken) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"apiVersion\":\"").append(API_VERSION).append("\",\"kind\":\"").append(kind).append("\",\"metadata\":{");
+        if (continueToken != null) {
+            builder.append("\"continue\":\"").append(continueToken).append("\"");
+        }
+        builder.append("},\"items\":[");
+        builder.append(String.join(",", items));
+        builder.append("]}");
+        return builder.toString();
+    }
+
+    protected static String renderWorkspace(String name) {
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("name", name);
+        metadata.addProperty("namespace", NAMESPACE);
+        metadata.addProperty("resourceVersion", "1");
+        JsonObject spec = new JsonObject();
+        spec.addProperty("displayName", String.format("Workspace %s", name));
+        JsonObject workspace = new JsonObject();
+        workspace.addProperty("apiVersion", API_VERSION);
+        workspace.addProperty("kind", "AnalyticsWorkspace");
+        workspace.add("metadata", metadata);
+        workspace.add("spec", spec);
+        return workspace.toString();
+    }
+
+    /**
+     * A binding held by the fake, along with its rendered JSON.
+     */
+    protected class Binding {
+
+        protected final String name;
+        protected final String username;
+        protected final String workspace;
+        protected int replicas = 0;
+        protected int resourceVersion = 1;
+        protected volatile String json;
+
+        protected Binding(String name, String username, String workspace) {
+            this.name = name;
+            this.username = username;
+            this.workspace = workspace;
+            this.json = render();
+        }
+
+        protected synchronized void setReplicas(int replicas) {
+            this.replicas = replicas;
+            resourceVersion++;
+            json = render();
+        }
+
+        protected String render() {
+            JsonObject labels = new JsonObject();
+            labels.addProperty(usernameLabel, WorkspaceKubernetesClient.usernameToLabel(username));
+            JsonObject metadata = new JsonObject();
+            metadata.addProperty("name", name);
+            metadata.addProperty("namespace", NAMESPACE);
+            metadata.addProperty("resourceVersion", String.valueOf(resourceVersion));
+            metadata.add("labels", labels);
+            JsonObject spec = new JsonObject();
+            spec.addProperty("username", username);
+            spec.addProperty("workspace", workspace);
+            spec.addProperty("replicas", replicas);
+            JsonObject binding = new JsonObject();
+            binding.addProperty("apiVersion", API_VERSION);
+            binding.addProperty("kind", "AnalyticsWorkspaceBinding");
+            binding.add("metadata", metadata);
+            binding.add("spec", spec);
+            return binding.toString();
+        }
+    }
+
+    /**
+     * The status code and body of a response.
+     */
+    public record Answer(int code, String body) {
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Measures the Kubernetes API traffic generated by logins.
+ *
+ * <p>
+ * This class drives the {@link WorkspaceRequiredAction} for many concurrent
+ * simulated users against a local mock API server, so that the number of
+ * requests and bytes each login costs, and how that grows with concurrency,
+ * is known before a larger realm is rolled out.</p>
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.kubernetes.client.openapi.ApiClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Test;
+import org.keycloak.authentication.RequiredActionContext;
+import org.keycloak.models.UserModel;
+
+/**
+ * Runs simulated logins through the required action and checks the API
+ * requests made per login against a budget, reporting the requests made by
+ * verb, the bytes transferred and the end-to-end latency percentiles of a
+ * login.
+ *
+ * A {@link MockWebServer} serves the {@code xlscsde.nhs.uk/v1} resources from
+ * a {@link FakeKubernetesApi} seeded with the given number of bindings for
+ * each user. Each user first logs in without a selection, which evaluates the
+ * triggers, renders the form and processes the first of their bindings, and
+ * then logs in again the given number of times with that selection stored,
+ * which only evaluates the triggers. Users run concurrently, their logins run
+ * one after another. Keycloak is replaced by Mockito mocks, and the client
+ * runs with its default configuration apart from the readiness wait, which is
+ * disabled as the mock server does not serve watches.
+ *
+ * The load is set with system properties, so that a larger run can be made
+ * with {@code -Dload-test.users=1000}:
+ * <ul>
+ * <li>{@code load-test.users}, the number of users, default 50</li>
+ * <li>{@code load-test.concurrency}, the number of users logging in at once,
+ * default 10</li>
+ * <li>{@code load-test.bindings-per-user}, default 10</li>
+ * <li>{@code load-test.logins-per-user}, the total number of logins of each
+ * user, default 2</li>
+ * <li>{@code load-test.max-requests-per-login}, the budget of API requests
+ * per login, averaged over all logins, 0 for none, default 5</li>
+ * </ul>
+ * The test fails if any login fails or the budget is exceeded.
+ */
+public class LoginLoadTest {
+
+    protected int users = Integer.getInteger("load-test.users", 50);
+    protected int concurrency = Integer.getInteger("load-test.concurrency", 10);
+    protected int bindingsPerUser = Integer.getInteger("load-test.bindings-per-user", 10);
+    protected int loginsPerUser = Integer.getInteger("load-test.logins-per-user", 2);
+    protected double maxRequestsPerLogin = Double.parseDouble(System.getProperty("load-test.max-requests-per-login", "5"));
+
+    protected FakeKubernetesApi api;
+    protected WorkspaceRequiredActionFactory factory;
+    protected List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+    protected AtomicInteger failures = new AtomicInteger();
+
+    @Test
+    public void loginsStayWithinRequestBudget() throws IOException, InterruptedException {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setReadinessTimeoutSeconds(0);
+        api = new FakeKubernetesApi(users * bindingsPerUser, bindingsPerUser, config.getUsernameLabel());
+
+        long elapsed;
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    FakeKubernetesApi.Answer answer = api.answer(request.getMethod(), request.getRequestUrl(),
+                            request.getBodySize() > 0 ? request.getBody().readUtf8() : null);
+                    return new MockResponse()
+                            .setResponseCode(answer.code())
+                            .setHeader("Content-Type", "application/json")
+                            .setBody(answer.body());
+                }
+            });
+            server.start();
+
+            ApiClient apiClient = new ApiClient();
+            apiClient.setBasePath(server.url("/").toString().replaceAll("/$", ""));
+            WorkspaceKubernetesClient client = new WorkspaceKubernetesClient(config, apiClient);
+            factory = new LoadTestRequiredActionFactory(config, client);
+
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            long started = System.nanoTime();
+            for (int i = 0; i < users; i++) {
+                String username = FakeKubernetesApi.username(i);
+                executor.execute(() -> runUser(username));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES), "Logins did not complete");
+            elapsed = System.nanoTime() - started;
+            client.close();
+        }
+
+        double requestsPerLogin = report(elapsed);
+        assertEquals(0, failures.get(), "Logins failed");
+        assertTrue(maxRequestsPerLogin <= 0 || requestsPerLogin <= maxRequestsPerLogin,
+                String.format("%.2f requests per login exceeds the budget of %.2f", requestsPerLogin, maxRequestsPerLogin));
+    }
+
+    /**
+     * Logs a user in the configured number of times.
+     *
+     * @param username The username of the user
+     */
+    protected void runUser(String username) {
+        UserModel user = simulatedUser(username);
+        String bindingName = api.getBindingNames(username).get(0);
+        for (int i = 0; i < loginsPerUser; i++) {
+            long start = System.nanoTime();
+            try {
+                login(user, String.format("workspace-0:%s", bindingName));
+                latencies.add(System.nanoTime() - start);
+            } catch (RuntimeException ex) {
+                failures.incrementAndGet();
+                System.err.printf("Login of user '%s' failed: %s%n", username, ex);
+            }
+        }
+    }
+
+    /**
+     * Runs one login through the required action, selecting a workspace if
+     * the required action is triggered.
+     *
+     * @param user The user logging in
+     * @param selection The value submitted on the selection form
+     */
+    protected void login(UserModel user, String selection) {
+        RequiredActionContext context = mock(RequiredActionContext.class, RETURNS_DEEP_STUBS);
+        when(context.getUser()).thenReturn(user);
+        when(context.getSession().getContext().getClient().getName()).thenReturn("account");
+        when(context.getAuthenticationSession().getParentSession().getId()).thenReturn(UUID.randomUUID().toString());
+        when(context.getHttpRequest().getDecodedFormParameters().getFirst(WorkspaceRequiredAction.WORKSPACE_NAME)).thenReturn(selection);
+
+        WorkspaceRequiredAction action = new WorkspaceRequiredAction(factory);
+        action.evaluateTriggers(context);
+        if (user.getRequiredActionsStream().anyMatch(WorkspaceRequiredAction.PROVIDER_ID::equals)) {
+            action.requiredActionChallenge(context);
+            action.processAction(context);
+        }
+    }
+
+    /**
+     * @param username The username of the user
+     * @return A user whose attributes and required actions are held in memory
+     */
+    protected static UserModel simulatedUser(String username) {
+        Map<String, String> attributes = new ConcurrentHashMap<String, String>();
+        Set<String> requiredActions = ConcurrentHashMap.newKeySet();
+        UserModel user = mock(UserModel.class);
+        when(user.getUsername()).thenReturn(username);
+        when(user.getFirstAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(user).setSingleAttribute(anyString(), anyString());
+        when(user.getRequiredActionsStream()).thenAnswer(invocation -> requiredActions.stream());
+        doAnswer(invocation -> requiredActions.add(invocation.getArgument(0))).when(user).addRequiredAction(anyString());
+        doAnswer(invocation -> requiredActions.remove(invocation.getArgument(0))).when(user).removeRequiredAction(anyString());
+        return user;
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param elapsedNanos The time taken by all the logins
+     * @return The average number of API requests per login
+     */
+    protected double report(long elapsedNanos) {
+        int logins = latencies.size() + failures.get();
+        Map<String, Long> requests = api.getRequestCounts();
+        long totalRequests = requests.values().stream().mapToLong(Long::longValue).sum();
+        double requestsPerLogin = logins > 0 ? (double) totalRequests / logins : 0;
+
+        List<Long> sorted = new ArrayList<Long>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("Logins: %d (%d users x %d, %d concurrent, %d bindings per user), failed: %d, %.1f logins/s%n",
+                logins, users, loginsPerUser, concurrency, bindingsPerUser, failures.get(), logins / (elapsedNanos / 1e9));
+        System.out.printf("Requests: %d %s, %.2f per login%n", totalRequests, requests, requestsPerLogin);
+        System.out.printf("Bytes: %d sent, %d received, %.0f per login%n", api.getBytesSent(), api.getBytesReceived(),
+                logins > 0 ? (double) (api.getBytesSent() + api.getBytesReceived()) / logins : 0);
+        System.out.printf("Latency (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 1.0));
+        return requestsPerLogin;
+    }
+
+    protected static double percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    /**
+     * A required action factory holding a workspace client created by the load
+     * test, in place of the one created when Keycloak starts.
+     */
+    protected static class LoadTestRequiredActionFactory extends WorkspaceRequiredActionFactory {
+
+        protected LoadTestRequiredActionFactory(WorkspaceClientConfig config, WorkspaceKubernetesClient client) {
+            clientConfig = config;
+            workspaceClient = client;
+            activationCoalescer = new WorkspaceActivationCoalescer(this::startActivation);
+        }
+    }
+}
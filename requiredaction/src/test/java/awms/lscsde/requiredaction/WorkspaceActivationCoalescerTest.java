@@ -0,0 +1,83 @@
+/**
+ * Tests for the {@link WorkspaceActivationCoalescer}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that concurrent activations for a user are shared or superseded, and
+ * that a pending activation is started on the follow-up executor rather than
+ * on the thread which completed the one before it.
+ */
+public class WorkspaceActivationCoalescerTest {
+
+    protected List<String> started = new ArrayList<String>();
+    protected List<CompletableFuture<WorkspaceActivationResult>> running = new ArrayList<CompletableFuture<WorkspaceActivationResult>>();
+    protected List<Runnable> followUps = new ArrayList<Runnable>();
+    protected WorkspaceActivationCoalescer coalescer = new WorkspaceActivationCoalescer((bindingName, username) -> {
+        started.add(bindingName);
+        CompletableFuture<WorkspaceActivationResult> future = new CompletableFuture<WorkspaceActivationResult>();
+        running.add(future);
+        return future;
+    }, followUps::add);
+
+    @Test
+    public void sharesAnInFlightActivationOfTheSameBinding() {
+        CompletableFuture<WorkspaceActivationResult> first = coalescer.activate("binding-a", "user0");
+        CompletableFuture<WorkspaceActivationResult> second = coalescer.activate("binding-a", "user0");
+
+        assertSame(first, second);
+        assertEquals(List.of("binding-a"), started);
+    }
+
+    @Test
+    public void startsThePendingActivationOnTheFollowUpExecutor() {
+        CompletableFuture<WorkspaceActivationResult> first = coalescer.activate("binding-a", "user0");
+        CompletableFuture<WorkspaceActivationResult> second = coalescer.activate("binding-b", "user0");
+        CompletableFuture<WorkspaceActivationResult> third = coalescer.activate("binding-c", "user0");
+        assertSame(second, third);
+
+        running.get(0).complete(new WorkspaceActivationResult("user0", "binding-a"));
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(List.of("binding-a"), started, "The pending activation ran on the completing thread");
+        assertEquals(1, followUps.size());
+
+        followUps.remove(0).run();
+        assertEquals(List.of("binding-a", "binding-c"), started);
+
+        WorkspaceActivationResult result = new WorkspaceActivationResult("user0", "binding-c");
+        running.get(1).complete(result);
+        assertSame(result, second.join());
+        assertTrue(followUps.isEmpty());
+    }
+
+    @Test
+    public void failsThePendingActivationIfTheExecutorRejectsIt() {
+        CompletableFuture<WorkspaceActivationResult> work = new CompletableFuture<WorkspaceActivationResult>();
+        WorkspaceActivationCoalescer rejecting = new WorkspaceActivationCoalescer(
+                (bindingName, username) -> work,
+                runnable -> {
+                    throw new IllegalStateException("rejected");
+                });
+        CompletableFuture<WorkspaceActivationResult> first = rejecting.activate("binding-a", "user0");
+        CompletableFuture<WorkspaceActivationResult> second = rejecting.activate("binding-b", "user0");
+
+        work.complete(new WorkspaceActivationResult("user0", "binding-a"));
+
+        assertTrue(first.isDone());
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(rejecting.activations.isEmpty());
+    }
+}
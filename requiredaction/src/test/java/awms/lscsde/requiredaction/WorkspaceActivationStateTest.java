@@ -0,0 +1,199 @@
+/**
+ * Tests for the {@link WorkspaceActivationState} against a two node embedded
+ * Infinispan cluster.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks, with two clustered cache managers each holding the distributed
+ * {@value WorkspaceActivationState#CACHE_NAME} cache, that only one node takes
+ * a user's activation lock, that the other node reuses the activation
+ * recorded by the node holding it, and that locks and activations expire.
+ */
+public class WorkspaceActivationStateTest {
+
+    protected static final String NAMESPACE = "analytics";
+
+    protected static DefaultCacheManager nodeA;
+    protected static DefaultCacheManager nodeB;
+
+    @BeforeAll
+    public static void startCluster() throws InterruptedException {
+        String clusterName = String.format("awms-test-%s", UUID.randomUUID());
+        nodeA = startNode(clusterName, "node-a");
+        nodeB = startNode(clusterName, "node-b");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (nodeA.getMembers().size() < 2 || nodeB.getMembers().size() < 2) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Cache managers did not form a cluster");
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    protected static DefaultCacheManager startNode(String clusterName, String nodeName) {
+        GlobalConfigurationBuilder global = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        global.transport()
+                .clusterName(clusterName)
+                .nodeName(nodeName)
+                .addProperty(JGroupsTransport.CONFIGURATION_FILE, "awms-test-jgroups.xml");
+        return new DefaultCacheManager(global.build());
+    }
+
+    @AfterAll
+    public static void stopCluster() {
+        if (nodeB != null) {
+            nodeB.stop();
+        }
+        if (nodeA != null) {
+            nodeA.stop();
+        }
+    }
+
+    protected static WorkspaceActivationState state(DefaultCacheManager node, long ttlSeconds) {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setClusterStateTtlSeconds(ttlSeconds);
+        config.setClusterLockTtlSeconds(ttlSeconds);
+        return WorkspaceActivationState.fromCacheManager(node, config);
+    }
+
+    protected static String username() {
+        return String.format("user-%s", UUID.randomUUID());
+    }
+
+    @Test
+    public void definesADistributedCache() {
+        state(nodeA, 60);
+        state(nodeB, 60);
+
+        assertEquals(CacheMode.DIST_SYNC, nodeA.getCacheConfiguration(WorkspaceActivationState.CACHE_NAME).clustering().cacheMode());
+        assertEquals(CacheMode.DIST_SYNC, nodeB.getCacheConfiguration(WorkspaceActivationState.CACHE_NAME).clustering().cacheMode());
+    }
+
+    @Test
+    public void onlyOneNodeTakesTheLock() throws Exception {
+        WorkspaceActivationState stateA = state(nodeA, 60);
+        WorkspaceActivationState stateB = state(nodeB, 60);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 20; i++) {
+                String username = username();
+                CountDownLatch start = new CountDownLatch(1);
+                Future<Boolean> lockedByA = executor.submit(() -> {
+                    start.await();
+                    return stateA.tryLock(username, "binding-0");
+                });
+                Future<Boolean> lockedByB = executor.submit(() -> {
+                    start.await();
+                    return stateB.tryLock(username, "binding-0");
+                });
+                start.countDown();
+
+                assertTrue(lockedByA.get(10, TimeUnit.SECONDS) ^ lockedByB.get(10, TimeUnit.SECONDS), "Both or neither node took the lock");
+                assertEquals("binding-0", stateA.getLockedBinding(username));
+                assertEquals("binding-0", stateB.getLockedBinding(username));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        String username = username();
+        assertTrue(stateA.tryLock(username, "binding-0"));
+        stateB.unlock(username, "binding-0");
+        assertFalse(stateB.tryLock(username, "binding-0"), "A node released a lock held by another");
+        stateA.unlock(username, "binding-0");
+        assertTrue(stateB.tryLock(username, "binding-0"));
+    }
+
+    @Test
+    public void waitingNodeReusesTheRecordedActivation() throws Exception {
+        String username = username();
+        CountDownLatch activating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WorkspaceActivationResult reconciled = new WorkspaceActivationResult(username, "binding-0");
+        reconciled.setWorkspaceBindingNamespace(NAMESPACE);
+
+        WorkspaceRequiredActionFactory factoryA = new WorkspaceRequiredActionFactory();
+        factoryA.activationState = state(nodeA, 60);
+        factoryA.workspaceClient = mock(WorkspaceKubernetesClient.class);
+        when(factoryA.workspaceClient.setActiveWorkspaceBindingForUser("binding-0", username)).thenAnswer(invocation -> {
+            activating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return reconciled;
+        });
+
+        WorkspaceRequiredActionFactory factoryB = new WorkspaceRequiredActionFactory();
+        factoryB.activationState = spy(state(nodeB, 60));
+        factoryB.workspaceClient = mock(WorkspaceKubernetesClient.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<WorkspaceActivationResult> resultA = executor.submit(() -> factoryA.activateBinding("binding-0", username));
+            assertTrue(activating.await(10, TimeUnit.SECONDS));
+            Future<WorkspaceActivationResult> resultB = executor.submit(() -> factoryB.activateBinding("binding-0", username));
+            verify(factoryB.activationState, timeout(10000).atLeastOnce()).tryLock(username, "binding-0");
+            assertFalse(resultB.isDone());
+            release.countDown();
+
+            assertSame(reconciled, resultA.get(10, TimeUnit.SECONDS));
+            WorkspaceActivationResult reused = resultB.get(10, TimeUnit.SECONDS);
+            assertTrue(reused.isSuccessful());
+            assertEquals(NAMESPACE, reused.getWorkspaceBindingNamespace());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+
+        verify(factoryB.workspaceClient, never()).setActiveWorkspaceBindingForUser(anyString(), anyString());
+        assertNull(factoryB.activationState.getLockedBinding(username));
+    }
+
+    @Test
+    public void locksAndActivationsExpire() throws InterruptedException {
+        String username = username();
+        WorkspaceActivationState stateA = state(nodeA, 1);
+        WorkspaceActivationState stateB = state(nodeB, 1);
+        WorkspaceActivationResult result = new WorkspaceActivationResult(username, "binding-0");
+        result.setWorkspaceBindingNamespace(NAMESPACE);
+
+        assertTrue(stateA.tryLock(username, "binding-0"));
+        stateA.recordActivation(username, result);
+        assertFalse(stateB.tryLock(username, "binding-0"));
+        assertNotNull(stateB.getActiveBinding(username));
+
+        TimeUnit.MILLISECONDS.sleep(1500);
+
+        assertNull(stateB.getActiveBinding(username));
+        assertNull(stateB.getLockedBinding(username));
+        assertTrue(stateB.tryLock(username, "binding-0"));
+    }
+}
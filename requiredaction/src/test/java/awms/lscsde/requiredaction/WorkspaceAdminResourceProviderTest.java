@@ -0,0 +1,176 @@
+/**
+ * Tests for the {@link WorkspaceAdminResourceProvider}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+/**
+ * Checks that a bulk scale needs a filter, or an explicit {@code all}, only
+ * selects the bindings of users of the realm the request was made to, and
+ * cancels its remaining patches when the response cannot be written.
+ */
+public class WorkspaceAdminResourceProviderTest {
+
+    protected KeycloakSession session;
+    protected RealmModel realm;
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceAdminResourceProvider provider;
+
+    @BeforeEach
+    public void setUp() {
+        session = mock(KeycloakSession.class, RETURNS_DEEP_STUBS);
+        realm = mock(RealmModel.class);
+        when(session.getContext().getRealm()).thenReturn(realm);
+        when(session.users().getUserByUsername(eq(realm), anyString())).thenReturn(null);
+        when(session.users().getUserByUsername(realm, "alice")).thenReturn(mock(UserModel.class));
+        when(session.users().getUserByUsername(realm, "bob")).thenReturn(mock(UserModel.class));
+
+        workspaceClient = mock(WorkspaceKubernetesClient.class);
+        when(workspaceClient.forEachWorkspaceBinding(any(), any())).thenAnswer(invocation -> {
+            Predicate<WorkspaceBindingSummary> visitor = invocation.getArgument(1);
+            for (WorkspaceBindingSummary binding : List.of(
+                    binding("alice-0", "alice", "workspace-0"),
+                    binding("alice-1", "alice", "workspace-1"),
+                    binding("bob-0", "bob", "workspace-0"),
+                    binding("mallory-0", "mallory", "workspace-0"),
+                    binding("orphan-0", null, "workspace-0"))) {
+                visitor.test(binding);
+            }
+            return true;
+        });
+
+        provider = new WorkspaceAdminResourceProvider(session, mock(WorkspaceRequiredActionFactory.class), null, new Semaphore(1), new AtomicLong(System.nanoTime()), 1);
+    }
+
+    protected static WorkspaceBindingSummary binding(String name, String username, String workspace) {
+        WorkspaceBindingSummary binding = new WorkspaceBindingSummary();
+        binding.metadata = new V1ObjectMeta().name(name).namespace("analytics");
+        binding.spec = new WorkspaceBindingSummary.Spec();
+        binding.spec.username = username;
+        binding.spec.workspace = workspace;
+        return binding;
+    }
+
+    protected static WorkspaceAdminResourceProvider.BulkScaleRequest request(String body) {
+        return WorkspaceAdminResourceProvider.GSON.fromJson(body, WorkspaceAdminResourceProvider.BulkScaleRequest.class);
+    }
+
+    protected List<String> select(String body) {
+        return provider.selectBindings(workspaceClient, request(body)).stream()
+                .map(WorkspaceBindingSummary::getName)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void rejectsAnUnfilteredScale() {
+        assertNotNull(request("{\"replicas\":0}").validate());
+        assertNotNull(request("{\"replicas\":0,\"all\":false}").validate());
+        assertNotNull(request("{\"replicas\":0,\"labelSelector\":\" \"}").validate());
+        assertNull(request("{\"replicas\":0,\"all\":true}").validate());
+        assertNull(request("{\"replicas\":0,\"workspace\":\"workspace-0\"}").validate());
+    }
+
+    @Test
+    public void rejectsAMissingOrNegativeReplicaCount() {
+        assertNotNull(request("{\"workspace\":\"workspace-0\"}").validate());
+        assertNotNull(request("{\"replicas\":-1,\"workspace\":\"workspace-0\"}").validate());
+    }
+
+    @Test
+    public void selectsOnlyBindingsOfUsersInTheRealm() {
+        assertEquals(List.of("alice-0", "alice-1", "bob-0"), select("{\"replicas\":0,\"all\":true}"));
+        assertEquals(List.of("alice-0", "bob-0"), select("{\"replicas\":0,\"workspace\":\"workspace-0\"}"));
+        assertEquals(List.of(), select("{\"replicas\":0,\"username\":\"mallory\"}"));
+    }
+
+    @Test
+    public void looksUpEachUserOnce() {
+        select("{\"replicas\":0,\"all\":true}");
+
+        verify(session.users(), times(1)).getUserByUsername(realm, "alice");
+        verify(session.users(), times(1)).getUserByUsername(realm, "mallory");
+        verify(session.users(), times(0)).getUserByUsername(eq(realm), isNull());
+    }
+
+    @Test
+    public void cancelsTheRemainingPatchesWhenTheResponseCannotBeWritten() throws Exception {
+        Semaphore permits = new Semaphore(2);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger patched = new AtomicInteger();
+        when(workspaceClient.scaleWorkspaceBinding(anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            if (patched.getAndIncrement() == 0) {
+                secondStarted.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+            secondStarted.countDown();
+            try {
+                TimeUnit.MINUTES.sleep(1);
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+            }
+            return "interrupted";
+        });
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Client disconnected");
+            }
+        };
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            provider = new WorkspaceAdminResourceProvider(session, mock(WorkspaceRequiredActionFactory.class), executor, permits, new AtomicLong(System.nanoTime()), 1000);
+            List<WorkspaceBindingSummary> bindings = List.of(
+                    binding("alice-0", "alice", "workspace-0"),
+                    binding("alice-1", "alice", "workspace-1"),
+                    binding("bob-0", "bob", "workspace-0"));
+
+            assertThrows(IOException.class, () -> provider.streamScale(workspaceClient, bindings, 0).write(disconnected));
+
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS), "The patch in flight was not cancelled");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (permits.availablePermits() < 2 && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            assertEquals(2, permits.availablePermits(), "The shared permits were not returned");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
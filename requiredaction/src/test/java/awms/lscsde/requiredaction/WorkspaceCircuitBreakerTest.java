@@ -0,0 +1,77 @@
+/**
+ * Tests for the {@link WorkspaceCircuitBreaker}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the breaker opens after the failure threshold, whether the
+ * calls throw or return a result reporting a failure, and that it rejects
+ * calls while open.
+ */
+public class WorkspaceCircuitBreakerTest {
+
+    protected AtomicInteger calls = new AtomicInteger();
+
+    protected String fail() {
+        calls.incrementAndGet();
+        throw new IllegalStateException("API server unavailable");
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        WorkspaceCircuitBreaker breaker = new WorkspaceCircuitBreaker(3, 60);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute("lookup", this::fail, () -> null));
+        }
+        assertEquals(WorkspaceCircuitBreaker.OPEN, breaker.getState());
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> breaker.execute("lookup", this::fail, () -> null));
+        assertEquals("Circuit breaker is open, 'lookup' was not attempted", rejected.getMessage());
+        assertEquals(3, calls.get());
+        assertEquals("stale", breaker.execute("lookup", this::fail, () -> "stale"));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        WorkspaceCircuitBreaker breaker = new WorkspaceCircuitBreaker(3, 60);
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute("lookup", this::fail, () -> null));
+        }
+        assertEquals("ok", breaker.execute("lookup", () -> "ok", () -> null));
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> breaker.execute("lookup", this::fail, () -> null));
+        }
+        assertEquals(WorkspaceCircuitBreaker.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedResultsCountAsFailures() {
+        WorkspaceCircuitBreaker breaker = new WorkspaceCircuitBreaker(2, 60);
+        WorkspaceActivationResult failed = new WorkspaceActivationResult("user0", "binding-0");
+        failed.addFailed("binding-0", "HTTP 500");
+
+        for (int i = 0; i < 2; i++) {
+            assertSame(failed, breaker.execute("activation", () -> failed, () -> null, result -> !result.isSuccessful()));
+        }
+        assertEquals(WorkspaceCircuitBreaker.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void trialCallClosesTheBreaker() {
+        WorkspaceCircuitBreaker breaker = new WorkspaceCircuitBreaker(1, 0);
+        assertThrows(IllegalStateException.class, () -> breaker.execute("lookup", this::fail, () -> null));
+        assertEquals(WorkspaceCircuitBreaker.OPEN, breaker.getState());
+
+        assertEquals("ok", breaker.execute("lookup", () -> "ok", () -> null));
+        assertEquals(WorkspaceCircuitBreaker.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Tests for the {@link WorkspaceClientConfig}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.Config;
+
+/**
+ * Checks that numeric settings below their minimum are replaced by the
+ * defaults, while zero is kept where it disables a setting.
+ */
+public class WorkspaceClientConfigTest {
+
+    protected Config.Scope scope;
+
+    @BeforeEach
+    public void setUp() {
+        scope = mock(Config.Scope.class, invocation -> invocation.getArguments().length > 1 ? invocation.getArgument(1) : null);
+    }
+
+    @Test
+    public void ignoresNonPositiveCountsAndSizes() {
+        when(scope.getInt(WorkspaceClientConfig.ACTIVATION_WORKERS, WorkspaceClientConfig.DEFAULT_ACTIVATION_WORKERS)).thenReturn(0);
+        when(scope.getInt(WorkspaceClientConfig.PATCH_CONCURRENCY_PER_USER, WorkspaceClientConfig.DEFAULT_PATCH_CONCURRENCY_PER_USER)).thenReturn(0);
+        when(scope.getLong(WorkspaceClientConfig.REAPER_INTERVAL_SECONDS, WorkspaceClientConfig.DEFAULT_REAPER_INTERVAL_SECONDS)).thenReturn(-1L);
+
+        WorkspaceClientConfig config = WorkspaceClientConfig.fromScope(scope);
+
+        assertEquals(WorkspaceClientConfig.DEFAULT_ACTIVATION_WORKERS, config.getActivationWorkers());
+        assertEquals(WorkspaceClientConfig.DEFAULT_PATCH_CONCURRENCY_PER_USER, config.getPatchConcurrencyPerUser());
+        assertEquals(WorkspaceClientConfig.DEFAULT_REAPER_INTERVAL_SECONDS, config.getReaperIntervalSeconds());
+    }
+
+    @Test
+    public void keepsZeroWhereItDisablesTheSetting() {
+        when(scope.getLong(WorkspaceClientConfig.READINESS_TIMEOUT_SECONDS, WorkspaceClientConfig.DEFAULT_READINESS_TIMEOUT_SECONDS)).thenReturn(0L);
+        when(scope.getInt(WorkspaceClientConfig.LIST_PAGE_SIZE, WorkspaceClientConfig.DEFAULT_LIST_PAGE_SIZE)).thenReturn(0);
+        when(scope.getLong(WorkspaceClientConfig.LOOKUP_DEADLINE_MILLIS, 0L)).thenReturn(-1L);
+
+        WorkspaceClientConfig config = WorkspaceClientConfig.fromScope(scope);
+
+        assertEquals(0L, config.getReadinessTimeoutSeconds());
+        assertEquals(0, config.getListPageSize());
+        assertEquals(0L, config.getLookupDeadlineMillis());
+    }
+
+    @Test
+    public void keepsValidValues() {
+        when(scope.getInt(WorkspaceClientConfig.ACTIVATION_WORKERS, WorkspaceClientConfig.DEFAULT_ACTIVATION_WORKERS)).thenReturn(8);
+
+        assertEquals(8, WorkspaceClientConfig.fromScope(scope).getActivationWorkers());
+    }
+}
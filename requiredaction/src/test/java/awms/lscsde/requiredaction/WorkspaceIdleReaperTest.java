@@ -0,0 +1,138 @@
+/**
+ * Tests for the {@link WorkspaceIdleReaper}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RequiredActionProviderModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.UserSessionModel;
+
+/**
+ * Checks that users are only looked up in realms using the workspace
+ * required action, once however many of their bindings are running, and that
+ * idle bindings are scaled down on the reaper's own thread.
+ */
+public class WorkspaceIdleReaperTest {
+
+    protected KeycloakSession session;
+    protected RealmModel workspaceRealm;
+    protected RealmModel otherRealm;
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceIdleReaper reaper;
+    protected List<Thread> patchedOn = new CopyOnWriteArrayList<Thread>();
+
+    @BeforeEach
+    public void setUp() {
+        session = mock(KeycloakSession.class, RETURNS_DEEP_STUBS);
+        workspaceRealm = realm(true);
+        otherRealm = realm(false);
+        when(session.realms().getRealmsStream()).thenAnswer(invocation -> Stream.of(otherRealm, workspaceRealm));
+
+        WorkspaceSelection selection = new WorkspaceSelection("alice-0", "workspace-0", "session-0");
+        Map<String, String> attributes = Map.of(WorkspaceSelection.ATTRIBUTE, selection.toJson());
+        UserModel alice = mock(UserModel.class);
+        when(alice.getFirstAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        when(session.users().getUserByUsername(workspaceRealm, "alice")).thenReturn(alice);
+        UserSessionModel expired = mock(UserSessionModel.class);
+        when(expired.getLastSessionRefresh()).thenReturn(0);
+        when(session.sessions().getUserSession(workspaceRealm, "session-0")).thenReturn(expired);
+
+        workspaceClient = mock(WorkspaceKubernetesClient.class);
+        when(workspaceClient.forEachWorkspaceBinding(isNull(), any())).thenAnswer(invocation -> {
+            Predicate<WorkspaceBindingSummary> visitor = invocation.getArgument(1);
+            for (WorkspaceBindingSummary binding : List.of(binding("alice-0", "alice", 1), binding("alice-1", "alice", 1), binding("alice-2", "alice", 0))) {
+                visitor.test(binding);
+            }
+            return true;
+        });
+        when(workspaceClient.patchWorkspaceBindingScale(anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            patchedOn.add(Thread.currentThread());
+            return new V1AnalyticsWorkspaceBinding();
+        });
+
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setReaperPatchesPerSecond(1000);
+        reaper = new WorkspaceIdleReaper(workspaceClient, null, config);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        reaper.stop();
+    }
+
+    protected static RealmModel realm(boolean usesWorkspaceAction) {
+        RealmModel realm = mock(RealmModel.class);
+        if (usesWorkspaceAction) {
+            RequiredActionProviderModel action = new RequiredActionProviderModel();
+            action.setAlias(WorkspaceRequiredAction.PROVIDER_ID);
+            action.setEnabled(true);
+            when(realm.getRequiredActionProviderByAlias(WorkspaceRequiredAction.PROVIDER_ID)).thenReturn(action);
+        }
+        return realm;
+    }
+
+    protected static WorkspaceBindingSummary binding(String name, String username, int replicas) {
+        WorkspaceBindingSummary binding = new WorkspaceBindingSummary();
+        binding.metadata = new V1ObjectMeta().name(name).namespace("analytics");
+        binding.spec = new WorkspaceBindingSummary.Spec();
+        binding.spec.username = username;
+        binding.spec.replicas = replicas;
+        return binding;
+    }
+
+    @Test
+    public void looksUpEachUserOnceInRealmsUsingTheAction() {
+        reaper.run(session);
+
+        verify(session.users(), times(1)).getUserByUsername(workspaceRealm, "alice");
+        verify(session.users(), never()).getUserByUsername(eq(otherRealm), anyString());
+    }
+
+    @Test
+    public void scalesDownIdleBindingsOnTheReaperThread() {
+        reaper.run(session);
+
+        verify(workspaceClient, timeout(5000)).patchWorkspaceBindingScale("analytics", "alice-0", 0);
+        verify(workspaceClient, timeout(5000)).patchWorkspaceBindingScale("analytics", "alice-1", 0);
+        verify(workspaceClient, never()).patchWorkspaceBindingScale("analytics", "alice-2", 0);
+        assertEquals(2, patchedOn.size());
+        assertTrue(patchedOn.stream().allMatch(thread -> WorkspaceIdleReaper.TASK_NAME.equals(thread.getName())));
+    }
+
+    @Test
+    public void skipsRealmsWithoutTheAction() {
+        when(session.realms().getRealmsStream()).thenAnswer(invocation -> Stream.of(otherRealm));
+
+        reaper.run(session);
+
+        verify(workspaceClient, never()).forEachWorkspaceBinding(any(), any());
+    }
+}
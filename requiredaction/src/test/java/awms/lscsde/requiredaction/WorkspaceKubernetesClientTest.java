@@ -0,0 +1,223 @@
+/**
+ * Tests for the {@link WorkspaceKubernetesClient}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.kubernetes.client.openapi.ApiClient;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a listing which fails on any page, including after earlier
+ * pages were visited, is reported as a {@link WorkspaceListException} rather
+ * than as a shorter, complete listing. Also checks that a lookup which
+ * exceeds its deadline opens the circuit breaker and is answered with the
+ * user's last known workspaces.
+ */
+public class WorkspaceKubernetesClientTest {
+
+    protected PagedBindingsApi api;
+    protected WorkspaceKubernetesClient client;
+
+    @BeforeEach
+    public void setUp() {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setListPageSize(10);
+        api = new PagedBindingsApi(30);
+        ApiClient apiClient = new ApiClient();
+        client = new WorkspaceKubernetesClient(config, apiClient);
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(api).build());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.close();
+    }
+
+    @Test
+    public void visitsEveryPage() {
+        List<String> names = new ArrayList<String>();
+
+        assertTrue(client.forEachWorkspaceBinding(null, binding -> names.add(binding.getName())));
+
+        assertEquals(30, names.size());
+        assertEquals(3, api.requests.get());
+    }
+
+    @Test
+    public void stopsWhenTheVisitorDoes() {
+        List<String> names = new ArrayList<String>();
+
+        assertFalse(client.forEachWorkspaceBinding(null, binding -> names.add(binding.getName()) && names.size() < 5));
+
+        assertEquals(5, names.size());
+        assertEquals(1, api.requests.get());
+    }
+
+    @Test
+    public void expiredContinueTokenFailsTheListing() {
+        api.failContinuedPages(410);
+        List<String> names = new ArrayList<String>();
+
+        WorkspaceListException ex = assertThrows(WorkspaceListException.class,
+                () -> client.forEachWorkspaceBinding(null, binding -> names.add(binding.getName())));
+
+        assertEquals(410, ex.getHttpStatusCode());
+        assertTrue(ex.isExpired());
+        assertEquals(10, names.size());
+    }
+
+    @Test
+    public void forbiddenPageFailsTheListing() {
+        api.failContinuedPages(403);
+
+        WorkspaceListException ex = assertThrows(WorkspaceListException.class,
+                () -> client.forEachWorkspaceBinding(null, binding -> true));
+
+        assertEquals(403, ex.getHttpStatusCode());
+        assertFalse(ex.isExpired());
+    }
+
+    @Test
+    public void failedListingFailsTheLookup() {
+        api.failAllPages(403);
+
+        assertThrows(WorkspaceListException.class, () -> client.getAllWorkspaceBindingSummariesForUser("user0"));
+    }
+
+    @Test
+    public void slowLookupFallsBackToTheLastKnownWorkspaces() {
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setLookupDeadlineMillis(200);
+        config.setCircuitBreakerEnabled(true);
+        config.setCircuitBreakerFailureThreshold(2);
+        config.setCircuitBreakerOpenSeconds(60);
+        FakeKubernetesApi slowApi = new FakeKubernetesApi(4, 2, config.getUsernameLabel());
+        ApiClient apiClient = new ApiClient();
+        WorkspaceKubernetesClient guarded = new WorkspaceKubernetesClient(config, apiClient);
+        apiClient.setHttpClient(apiClient.getHttpClient().newBuilder().addInterceptor(slowApi).build());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        try {
+            String username = FakeKubernetesApi.username(0);
+            List<BoundWorkspace> known = guarded.getAllWorkspacesForUser(username);
+            assertEquals(2, known.size());
+
+            slowApi.setLatencyMillis(5000);
+            for (int i = 0; i < 2; i++) {
+                long started = System.nanoTime();
+                assertSame(known, guarded.getAllWorkspacesForUser(username));
+                assertTrue(System.nanoTime() - started < 2000000000L, "The lookup was not bounded by its deadline");
+            }
+            assertEquals(WorkspaceCircuitBreaker.OPEN, guarded.circuitBreaker.getState());
+
+            long lists = slowApi.getRequestCounts().get("list");
+            assertSame(known, guarded.getAllWorkspacesForUser(username));
+            assertEquals(lists, slowApi.getRequestCounts().get("list"), "A lookup was made while the breaker was open");
+            assertEquals(3.0, registry.counter(WorkspaceMetrics.FALLBACK_HITS, WorkspaceMetrics.TAG_OPERATION, "workspaces").count());
+        } finally {
+            Metrics.removeRegistry(registry);
+            guarded.close();
+        }
+    }
+
+    /**
+     * An OkHttp interceptor answering LISTs of bindings a page at a time,
+     * honouring the limit and continue parameters, which can fail listings
+     * with a given status code, either every page or only the pages after
+     * the first.
+     */
+    protected static class PagedBindingsApi implements Interceptor {
+
+        protected static final MediaType JSON = MediaType.get("application/json");
+
+        protected int bindingCount;
+        protected int failureCode = 0;
+        protected boolean continuedPagesOnly = false;
+        protected AtomicInteger requests = new AtomicInteger();
+
+        protected PagedBindingsApi(int bindingCount) {
+            this.bindingCount = bindingCount;
+        }
+
+        protected void failContinuedPages(int code) {
+            failureCode = code;
+            continuedPagesOnly = true;
+        }
+
+        protected void failAllPages(int code) {
+            failureCode = code;
+            continuedPagesOnly = false;
+        }
+
+        @Override
+        public Response intercept(Chain chain) {
+            Request request = chain.request();
+            HttpUrl url = request.url();
+            requests.incrementAndGet();
+            String continueToken = url.queryParameter("continue");
+            if (failureCode != 0 && (continueToken != null || !continuedPagesOnly)) {
+                return respond(request, failureCode, String.format("{\"kind\":\"Status\",\"apiVersion\":\"v1\",\"status\":\"Failure\",\"code\":%d}", failureCode));
+            }
+
+            int from = continueToken != null ? Integer.parseInt(continueToken) : 0;
+            String limit = url.queryParameter("limit");
+            int to = limit != null ? Math.min(bindingCount, from + Integer.parseInt(limit)) : bindingCount;
+            JsonArray items = new JsonArray();
+            for (int i = from; i < to; i++) {
+                JsonObject metadata = new JsonObject();
+                metadata.addProperty("name", String.format("binding-%d", i));
+                metadata.addProperty("namespace", "analytics");
+                JsonObject spec = new JsonObject();
+                spec.addProperty("username", String.format("user%d", i));
+                spec.addProperty("workspace", "workspace-0");
+                JsonObject binding = new JsonObject();
+                binding.add("metadata", metadata);
+                binding.add("spec", spec);
+                items.add(binding);
+            }
+            JsonObject listMetadata = new JsonObject();
+            if (to < bindingCount) {
+                listMetadata.addProperty("continue", String.valueOf(to));
+            }
+            JsonObject list = new JsonObject();
+            list.addProperty("apiVersion", "xlscsde.nhs.uk/v1");
+            list.addProperty("kind", "AnalyticsWorkspaceBindingList");
+            list.add("metadata", listMetadata);
+            list.add("items", items);
+            return respond(request, 200, list.toString());
+        }
+
+        protected static Response respond(Request request, int code, String body) {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(code == 200 ? "OK" : "Error")
+                    .body(ResponseBody.create(body, JSON))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Tests for the {@link WorkspaceLabelBackfill}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import io.github.lsc.sde.analytics.workspace.management.models.V1AnalyticsWorkspaceBinding;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Checks that the unlabelled scan is only switched off after a pass which
+ * listed every page, that an expired listing is restarted and that a
+ * labelling pass stops at the batch size. Also checks that the scheduled task
+ * only queues a labelling pass on the backfill's own thread.
+ */
+public class WorkspaceLabelBackfillTest {
+
+    protected static final String SELECTOR = "!xlscsde.nhs.uk/username";
+
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceLabelBackfill backfill;
+
+    @BeforeEach
+    public void setUp() {
+        workspaceClient = mock(WorkspaceKubernetesClient.class);
+        when(workspaceClient.unlabelledSelector()).thenReturn(SELECTOR);
+        WorkspaceClientConfig config = new WorkspaceClientConfig();
+        config.setLabelBackfillBatchSize(2);
+        config.setLabelBackfillPatchesPerSecond(1000);
+        backfill = new WorkspaceLabelBackfill(workspaceClient, config);
+    }
+
+    protected static WorkspaceBindingSummary binding(String name, String username) {
+        WorkspaceBindingSummary binding = new WorkspaceBindingSummary();
+        binding.metadata = new V1ObjectMeta().name(name).namespace("analytics");
+        binding.spec = new WorkspaceBindingSummary.Spec();
+        binding.spec.username = username;
+        return binding;
+    }
+
+    protected static Answer<Boolean> visiting(WorkspaceBindingSummary... bindings) {
+        return invocation -> {
+            Predicate<WorkspaceBindingSummary> visitor = invocation.getArgument(1);
+            for (WorkspaceBindingSummary binding : bindings) {
+                if (!visitor.test(binding)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @Test
+    public void failedListingLeavesTheScanOn() {
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any())).thenThrow(new WorkspaceListException("Forbidden", 403));
+
+        assertThrows(WorkspaceListException.class, () -> backfill.runPass(false));
+
+        verify(workspaceClient, never()).setUnlabelledBindingsCleared(anyBoolean());
+        assertEquals(-1, backfill.getBacklog());
+    }
+
+    @Test
+    public void expiredListingIsRestartedFromTheFirstPage() throws InterruptedException {
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any()))
+                .thenThrow(new WorkspaceListException("Expired", 410))
+                .thenAnswer(visiting(binding("binding-0", null)));
+
+        backfill.runPass(false);
+
+        verify(workspaceClient, times(2)).forEachWorkspaceBinding(anyString(), any());
+        verify(workspaceClient).setUnlabelledBindingsCleared(true);
+        assertEquals(0, backfill.getBacklog());
+    }
+
+    @Test
+    public void repeatedlyExpiredListingFails() {
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any())).thenThrow(new WorkspaceListException("Expired", 410));
+
+        assertThrows(WorkspaceListException.class, () -> backfill.runPass(false));
+
+        verify(workspaceClient, times(WorkspaceLabelBackfill.MAX_RESTARTS + 1)).forEachWorkspaceBinding(anyString(), any());
+        verify(workspaceClient, never()).setUnlabelledBindingsCleared(anyBoolean());
+    }
+
+    @Test
+    public void labelsOneBatchAndCountsTheRest() throws InterruptedException {
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any())).thenAnswer(visiting(
+                binding("binding-0", "user0"), binding("binding-1", "user1"), binding("binding-2", "user2")));
+        when(workspaceClient.patchWorkspaceBindingUsernameLabel(anyString(), anyString(), anyString()))
+                .thenReturn(new V1AnalyticsWorkspaceBinding());
+
+        backfill.runPass(true);
+
+        verify(workspaceClient).patchWorkspaceBindingUsernameLabel("analytics", "binding-0", "user0");
+        verify(workspaceClient).patchWorkspaceBindingUsernameLabel("analytics", "binding-1", "user1");
+        verify(workspaceClient, never()).patchWorkspaceBindingUsernameLabel("analytics", "binding-2", "user2");
+        verify(workspaceClient).setUnlabelledBindingsCleared(false);
+        assertEquals(1, backfill.getBacklog());
+    }
+
+    @Test
+    public void countingPassDoesNotPatch() throws InterruptedException {
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any())).thenAnswer(visiting(binding("binding-0", "user0")));
+
+        backfill.runPass(false);
+
+        verify(workspaceClient, never()).patchWorkspaceBindingUsernameLabel(anyString(), anyString(), anyString());
+        verify(workspaceClient).setUnlabelledBindingsCleared(false);
+        assertEquals(1, backfill.getBacklog());
+    }
+
+    @Test
+    public void runQueuesTheLabellingPassOnTheBackfillThread() throws InterruptedException {
+        CountDownLatch patching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> patchedOn = new AtomicReference<Thread>();
+        when(workspaceClient.forEachWorkspaceBinding(anyString(), any())).thenAnswer(visiting(binding("binding-0", "user0")));
+        when(workspaceClient.patchWorkspaceBindingUsernameLabel(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            patchedOn.set(Thread.currentThread());
+            patching.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new V1AnalyticsWorkspaceBinding();
+        });
+
+        backfill.start();
+        try {
+            backfill.run(null);
+            assertTrue(patching.await(5, TimeUnit.SECONDS));
+            backfill.run(null);
+            release.countDown();
+
+            verify(workspaceClient, timeout(5000)).setUnlabelledBindingsCleared(true);
+            verify(workspaceClient, times(1)).patchWorkspaceBindingUsernameLabel("analytics", "binding-0", "user0");
+            assertEquals(WorkspaceLabelBackfill.TASK_NAME, patchedOn.get().getName());
+        } finally {
+            release.countDown();
+            backfill.stop();
+        }
+    }
+}
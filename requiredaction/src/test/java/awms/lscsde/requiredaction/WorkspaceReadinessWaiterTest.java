@@ -0,0 +1,44 @@
+/**
+ * Tests for the {@link WorkspaceReadinessWaiter}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that whether a binding is waited on is decided from that binding's
+ * own status rather than from any other binding seen before it.
+ */
+public class WorkspaceReadinessWaiterTest {
+
+    protected static JsonObject binding(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    @Test
+    public void readyConditionOrReplicasAreReady() {
+        assertTrue(WorkspaceReadinessWaiter.isReady(binding("{\"status\":{\"conditions\":[{\"type\":\"Ready\",\"status\":\"True\"}]}}")));
+        assertTrue(WorkspaceReadinessWaiter.isReady(binding("{\"status\":{\"availableReplicas\":1}}")));
+        assertFalse(WorkspaceReadinessWaiter.isReady(binding("{\"status\":{\"conditions\":[{\"type\":\"Ready\",\"status\":\"False\"}]}}")));
+        assertFalse(WorkspaceReadinessWaiter.isReady(binding("{\"status\":{\"readyReplicas\":0}}")));
+    }
+
+    @Test
+    public void bindingWithReadinessFieldsIsWaitedOn() {
+        assertTrue(WorkspaceReadinessWaiter.reportsReadiness(binding("{\"status\":{\"readyReplicas\":0}}")));
+        assertTrue(WorkspaceReadinessWaiter.reportsReadiness(binding("{\"status\":{\"conditions\":[{\"type\":\"Ready\",\"status\":\"False\"}]}}")));
+        assertFalse(WorkspaceReadinessWaiter.reportsReadiness(binding("{\"spec\":{\"replicas\":1}}")));
+    }
+
+    @Test
+    public void bindingAwaitingItsControllerIsWaitedOn() {
+        assertTrue(WorkspaceReadinessWaiter.isReconciling(binding("{\"metadata\":{\"generation\":3},\"status\":{\"observedGeneration\":2}}")));
+        assertFalse(WorkspaceReadinessWaiter.isReconciling(binding("{\"metadata\":{\"generation\":3},\"status\":{\"observedGeneration\":3}}")));
+        assertFalse(WorkspaceReadinessWaiter.isReconciling(binding("{\"metadata\":{\"generation\":3}}")));
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Tests for the activation paths of the {@link WorkspaceRequiredActionFactory}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks how an activation uses the cluster-wide activation state: a recorded
+ * activation is only trusted once the binding is confirmed scaled up, a node
+ * waiting on the lock reuses the activation recorded by the node holding it,
+ * and the activation fails rather than proceeding without the lock. Also
+ * checks that activations fail cleanly when the workspace client could not
+ * be created.
+ */
+public class WorkspaceRequiredActionFactoryTest {
+
+    protected static final String USERNAME = "user0";
+    protected static final String BINDING = "binding-0";
+    protected static final String NAMESPACE = "analytics";
+
+    protected WorkspaceRequiredActionFactory factory;
+    protected WorkspaceKubernetesClient workspaceClient;
+    protected WorkspaceActivationState activationState;
+    protected WorkspaceActivationResult reconciled;
+
+    @BeforeEach
+    public void setUp() {
+        workspaceClient = mock(WorkspaceKubernetesClient.class);
+        activationState = mock(WorkspaceActivationState.class);
+        reconciled = new WorkspaceActivationResult(USERNAME, BINDING);
+        reconciled.setWorkspaceBindingNamespace(NAMESPACE);
+        when(workspaceClient.setActiveWorkspaceBindingForUser(BINDING, USERNAME)).thenReturn(reconciled);
+
+        factory = new WorkspaceRequiredActionFactory();
+        factory.workspaceClient = workspaceClient;
+        factory.activationState = activationState;
+    }
+
+    @Test
+    public void failsActivationsWithoutAWorkspaceClient() {
+        WorkspaceRequiredActionFactory unavailable = new WorkspaceRequiredActionFactory();
+
+        WorkspaceActivationResult result = unavailable.activate(BINDING, USERNAME).join();
+
+        assertFalse(result.isSuccessful());
+        assertEquals(Map.of(BINDING, "Workspace Client unavailable"), result.getErrors());
+    }
+
+    @Test
+    public void skipsTheLockWhenTheRecordedActivationIsConfirmed() {
+        when(activationState.getActiveBinding(USERNAME)).thenReturn(new WorkspaceActivationState.ActiveBinding(BINDING, NAMESPACE, 1L, "node-1"));
+        when(workspaceClient.isWorkspaceBindingActive(NAMESPACE, BINDING)).thenReturn(Boolean.TRUE);
+
+        WorkspaceActivationResult result = factory.activateBinding(BINDING, USERNAME);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(NAMESPACE, result.getWorkspaceBindingNamespace());
+        verify(activationState, never()).tryLock(anyString(), anyString());
+        verify(workspaceClient, never()).setActiveWorkspaceBindingForUser(anyString(), anyString());
+    }
+
+    @Test
+    public void reconcilesWhenTheRecordedActivationIsNotConfirmed() {
+        when(activationState.getActiveBinding(USERNAME)).thenReturn(new WorkspaceActivationState.ActiveBinding(BINDING, NAMESPACE, 1L, "node-1"));
+        when(workspaceClient.isWorkspaceBindingActive(NAMESPACE, BINDING)).thenReturn(null);
+        when(activationState.tryLock(USERNAME, BINDING)).thenReturn(true);
+
+        WorkspaceActivationResult result = factory.activateBinding(BINDING, USERNAME);
+
+        assertSame(reconciled, result);
+        verify(activationState).recordActivation(USERNAME, reconciled);
+        verify(activationState).unlock(USERNAME, BINDING);
+    }
+
+    @Test
+    public void reusesTheActivationOfTheNodeHoldingTheLock() {
+        WorkspaceActivationState.ActiveBinding winner = new WorkspaceActivationState.ActiveBinding(BINDING, NAMESPACE, System.currentTimeMillis() + 60000L, "node-2");
+        when(activationState.getActiveBinding(USERNAME)).thenReturn(null, winner);
+        when(activationState.tryLock(USERNAME, BINDING)).thenReturn(false, true);
+
+        WorkspaceActivationResult result = factory.activateBinding(BINDING, USERNAME);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(NAMESPACE, result.getWorkspaceBindingNamespace());
+        verify(workspaceClient, never()).setActiveWorkspaceBindingForUser(anyString(), anyString());
+        verify(activationState).unlock(USERNAME, BINDING);
+    }
+
+    @Test
+    public void failsWhenTheLockIsNotReleasedInTime() {
+        factory.clientConfig.setClusterLockWaitMillis(0);
+        when(activationState.tryLock(USERNAME, BINDING)).thenReturn(false);
+
+        WorkspaceActivationResult result = factory.activateBinding(BINDING, USERNAME);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(Map.of(BINDING, "Timed out waiting for the activation lock"), result.getErrors());
+        assertNull(result.getWorkspaceBindingNamespace());
+        verify(workspaceClient, never()).setActiveWorkspaceBindingForUser(anyString(), anyString());
+        verify(activationState, never()).unlock(anyString(), anyString());
+    }
+}
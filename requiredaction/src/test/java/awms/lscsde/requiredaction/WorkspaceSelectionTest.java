@@ -0,0 +1,114 @@
+/**
+ * Tests for the {@link WorkspaceSelection}.
+ */
+package awms.lscsde.requiredaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.UserModel;
+
+/**
+ * Checks that the {@value WorkspaceSelection#ATTRIBUTE} attribute is the only
+ * one read once present, that selecting a workspace only writes the
+ * attributes used by protocol mappers which changed, and that a user without
+ * it is migrated once.
+ */
+public class WorkspaceSelectionTest {
+
+    protected Map<String, String> attributes = new HashMap<String, String>();
+    protected UserModel user;
+
+    @BeforeEach
+    public void setUp() {
+        user = mock(UserModel.class);
+        when(user.getUsername()).thenReturn("alice");
+        when(user.getFirstAttribute(anyString())).thenAnswer(invocation -> attributes.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(user).setSingleAttribute(anyString(), anyString());
+        doAnswer(invocation -> attributes.remove(invocation.<String>getArgument(0)))
+                .when(user).removeAttribute(anyString());
+    }
+
+    protected void legacyAttributes(String binding, String workspace, String session) {
+        attributes.put(WorkspaceRequiredAction.WORKSPACE_BINDING, binding);
+        attributes.put(WorkspaceRequiredAction.WORKSPACE_NAME, workspace);
+        attributes.put(WorkspaceRequiredAction.WORKSPACE_ID, String.format("%s\\alice", workspace));
+        attributes.put(WorkspaceRequiredAction.WORKSPACE_ID_FORMATTED, String.format("%s@alice", workspace));
+        attributes.put(WorkspaceRequiredAction.WORKSPACE_ASSIGNED_SESSION, session);
+    }
+
+    @Test
+    public void readsOnlyTheSingleAttributeOncePresent() {
+        legacyAttributes("alice-1", "workspace-1", "session-1");
+        attributes.put(WorkspaceSelection.ATTRIBUTE, new WorkspaceSelection("alice-0", "workspace-0", "session-0").toJson());
+
+        WorkspaceSelection selection = WorkspaceSelection.read(user);
+
+        assertEquals("alice-0", selection.getBindingName());
+        assertEquals("workspace-0", selection.getWorkspaceName());
+        assertEquals("session-0", selection.getAssignedSession());
+        assertFalse(selection.isLegacy());
+    }
+
+    @Test
+    public void switchingWorkspaceOnlyWritesTheMapperAttributes() {
+        new WorkspaceSelection("alice-0", "workspace-0", "session-0").write(user);
+        clearInvocations(user);
+
+        new WorkspaceSelection("alice-1", "workspace-1", "session-0").write(user);
+
+        verify(user, times(4)).setSingleAttribute(anyString(), anyString());
+        verify(user, never()).removeAttribute(anyString());
+        assertEquals("workspace-1", attributes.get(WorkspaceRequiredAction.WORKSPACE_NAME));
+        assertEquals("workspace-1\\alice", attributes.get(WorkspaceRequiredAction.WORKSPACE_ID));
+        assertEquals("workspace-1@alice", attributes.get(WorkspaceRequiredAction.WORKSPACE_ID_FORMATTED));
+        assertNull(attributes.get(WorkspaceRequiredAction.WORKSPACE_BINDING));
+        assertNull(attributes.get(WorkspaceRequiredAction.WORKSPACE_ASSIGNED_SESSION));
+    }
+
+    @Test
+    public void reselectingTheSameWorkspaceOnlyWritesTheSingleAttribute() {
+        new WorkspaceSelection("alice-0", "workspace-0", "session-0").write(user);
+        clearInvocations(user);
+
+        new WorkspaceSelection("alice-0", "workspace-0", "session-1").write(user);
+
+        verify(user, times(1)).setSingleAttribute(anyString(), anyString());
+        verify(user).setSingleAttribute(eq(WorkspaceSelection.ATTRIBUTE), anyString());
+    }
+
+    @Test
+    public void migratesALegacyUserOnce() {
+        legacyAttributes("alice-0", "workspace-0", "session-0");
+
+        WorkspaceSelection selection = WorkspaceSelection.read(user);
+        assertTrue(selection.isLegacy());
+        selection.migrate(user);
+        WorkspaceSelection.read(user).migrate(user);
+
+        verify(user, times(1)).setSingleAttribute(anyString(), anyString());
+        assertNotNull(attributes.get(WorkspaceSelection.ATTRIBUTE));
+        assertNull(attributes.get(WorkspaceRequiredAction.WORKSPACE_BINDING));
+        assertNull(attributes.get(WorkspaceRequiredAction.WORKSPACE_ASSIGNED_SESSION));
+        assertEquals("workspace-0@alice", attributes.get(WorkspaceRequiredAction.WORKSPACE_ID_FORMATTED));
+        assertEquals("alice-0", WorkspaceSelection.read(user).getBindingName());
+    }
+}